@@ -0,0 +1,66 @@
+package org.pgp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.pgp.config.ScraperConfiguration;
+import org.pgp.scrape.AreaScraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Cold start of reading scraper.xml, once per fresh JVM so class loading and initialisation are what's measured:
+// the reflective loader against a Spring application context. Run with more forks for tighter error bounds.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ConfigurationStartupBenchmark {
+  private static final String CONFIGURATION =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+          "<beans xmlns=\"http://www.springframework.org/schema/beans\"\n" +
+          "       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+          "       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-3.0.xsd\">\n" +
+          "<bean id=\"scraper\" class=\"org.pgp.scrape.TilingAreaScraper\">\n" +
+          "    <constructor-arg name=\"scraper\">\n" +
+          "        <bean class=\"org.pgp.scrape.PineDatabaseScraper\">\n" +
+          "            <constructor-arg name=\"host\" value=\"localhost\"/>\n" +
+          "            <constructor-arg name=\"user\" value=\"root\"/>\n" +
+          "            <constructor-arg name=\"password\" value=\"pine\"/>\n" +
+          "            <constructor-arg name=\"schema\" value=\"gyms\"/>\n" +
+          "            <constructor-arg name=\"pageSize\" value=\"5000\"/>\n" +
+          "            <constructor-arg name=\"fetchSize\" value=\"1000\"/>\n" +
+          "        </bean>\n" +
+          "    </constructor-arg>\n" +
+          "    <constructor-arg name=\"parallelism\" value=\"4\"/>\n" +
+          "    <constructor-arg name=\"maxTileArea\" value=\"0.05\"/>\n" +
+          "    <constructor-arg name=\"splitThreshold\" value=\"500\"/>\n" +
+          "    <constructor-arg name=\"maxDepth\" value=\"4\"/>\n" +
+          "</bean>\n" +
+          "</beans>\n";
+
+  private String location;
+
+  @Setup
+  public void setUp() throws IOException {
+    final File file = File.createTempFile("scraper", ".xml");
+    file.deleteOnExit();
+    Files.write(file.toPath(), CONFIGURATION.getBytes(StandardCharsets.UTF_8));
+
+    // absolute paths are only taken as such by Spring when given as a file: URL
+    location = "file:" + file.getAbsolutePath();
+  }
+
+  @Benchmark
+  public AreaScraper reflective() {
+    return ScraperConfiguration.load(location);
+  }
+
+  @Benchmark
+  public AreaScraper spring() {
+    return ScraperConfiguration.loadWithSpring(location);
+  }
+}
@@ -0,0 +1,41 @@
+package org.pgp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.pgp.CoordinateRange;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoordinateRangeBenchmark {
+  @Param({"4", "256", "4096"})
+  private int tiles;
+
+  private final BigDecimal minLat = BigDecimal.valueOf(GymData.MIN_LAT);
+  private final BigDecimal maxLat = BigDecimal.valueOf(GymData.MAX_LAT);
+  private final BigDecimal minLong = BigDecimal.valueOf(GymData.MIN_LONG);
+  private final BigDecimal maxLong = BigDecimal.valueOf(GymData.MAX_LONG);
+
+  private CoordinateRange range;
+
+  @Setup
+  public void setUp() {
+    range = new CoordinateRange(minLat, maxLat, minLong, maxLong);
+  }
+
+  @Benchmark
+  public CoordinateRange construct() {
+    return new CoordinateRange(minLat, maxLat, minLong, maxLong);
+  }
+
+  @Benchmark
+  public List<CoordinateRange> subDivide() {
+    return range.subDivide(tiles);
+  }
+}
@@ -0,0 +1,98 @@
+package org.pgp.benchmark;
+
+import org.pgp.object.Geocode;
+import org.pgp.object.Gym;
+import org.pgp.object.GymInfo;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+// Reproducible synthetic gyms spread over roughly a one degree square, clustered like towns around a city.
+final class GymData {
+  private static final long SEED = 0x5eed_9e0L;
+
+  static final double MIN_LAT = 40.0d;
+  static final double MAX_LAT = 41.0d;
+  static final double MIN_LONG = -80.5d;
+  static final double MAX_LONG = -79.5d;
+
+  private static final String[] WORDS = {
+      "Park", "Church", "Mural", "Fountain", "Library", "Statue", "Memorial", "Trail", "Garden", "Bridge",
+      "Station", "Plaza", "Marker", "Playground", "Gazebo", "Museum"
+  };
+
+  private GymData() {
+  }
+
+  static List<Gym> gyms(final int count) {
+    return gyms(count, SEED);
+  }
+
+  static List<Gym> gyms(final int count, final long seed) {
+    final Random random = new Random(seed);
+
+    final int clusters = Math.max(1, count / 500);
+    final double[][] centers = new double[clusters][];
+    for (int i = 0; i < clusters; i++) {
+      centers[i] = new double[]{
+          MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT),
+          MIN_LONG + random.nextDouble() * (MAX_LONG - MIN_LONG)};
+    }
+
+    final List<Gym> gyms = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final double[] center = centers[random.nextInt(clusters)];
+
+      final double latitude = clamp(center[0] + random.nextGaussian() * 0.02d, MIN_LAT, MAX_LAT);
+      final double longitude = clamp(center[1] + random.nextGaussian() * 0.02d, MIN_LONG, MAX_LONG);
+
+      final String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+
+      final GymInfo gymInfo = new GymInfo(
+          "Description of " + name,
+          BigDecimal.valueOf(latitude).setScale(7, RoundingMode.HALF_EVEN),
+          BigDecimal.valueOf(longitude).setScale(7, RoundingMode.HALF_EVEN),
+          null);
+      gymInfo.setAddressComponents(Collections.singletonList(
+          new Geocode(i + " Main St, Pittsburgh, PA 15213, USA", null)));
+      gymInfo.setPlaces(new TreeSet<>(Arrays.asList(WORDS[i % WORDS.length], WORDS[(i * 7) % WORDS.length])));
+
+      gyms.add(new Gym(String.format("%032x", random.nextLong() & Long.MAX_VALUE) + i, name, gymInfo));
+    }
+
+    return gyms;
+  }
+
+  // a later scrape of the same area: about 1% renamed, 1% moved, 1% gone and 1% new
+  static List<Gym> rescrape(final List<Gym> gyms) {
+    final Random random = new Random(SEED + 1L);
+
+    final List<Gym> rescraped = new ArrayList<>(gyms.size());
+    for (final Gym gym : gyms) {
+      final int change = random.nextInt(100);
+      if (change == 0) {
+        continue;
+      }
+
+      final GymInfo gymInfo = gym.getGymInfo();
+      final BigDecimal latitude = change == 2
+          ? gymInfo.getLatitude().add(new BigDecimal("0.0001000"))
+          : gymInfo.getLatitude();
+      final String name = change == 1
+          ? gym.getGymName() + " (renamed)"
+          : gym.getGymName();
+
+      rescraped.add(new Gym(gym.getGymId(), name,
+          new GymInfo(gymInfo.getGymDescription(), latitude, gymInfo.getLongitude(), null)));
+    }
+
+    rescraped.addAll(gyms(gyms.size() / 100, SEED + 2L));
+
+    return rescraped;
+  }
+
+  private static double clamp(final double value, final double min, final double max) {
+    return Math.max(min, Math.min(max, value));
+  }
+}
@@ -0,0 +1,81 @@
+package org.pgp.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.pgp.io.GymJsonReader;
+import org.pgp.io.GymJsonWriter;
+import org.pgp.object.Gym;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+// Gson serialization of gym sets, both as a single tree and streamed gym by gym as gyms.json is written.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GymJsonBenchmark {
+  @Param({"1000", "10000", "100000"})
+  private int gymCount;
+
+  @Param({"true", "false"})
+  private boolean prettyPrinting;
+
+  private Set<Gym> gyms;
+  private String json;
+  private Gson gson;
+
+  @Setup
+  public void setUp() throws IOException {
+    gyms = new TreeSet<>(GymData.gyms(gymCount));
+
+    final GsonBuilder builder = new GsonBuilder();
+    if (prettyPrinting) {
+      builder.setPrettyPrinting();
+    }
+    gson = builder.create();
+
+    json = streamWrite().toString();
+  }
+
+  @Benchmark
+  public String toJson() {
+    return gson.toJson(gyms);
+  }
+
+  @Benchmark
+  public Writer streamWrite() throws IOException {
+    final StringWriter writer = new StringWriter(json != null ? json.length() : 16);
+
+    try (final GymJsonWriter gymWriter = new GymJsonWriter(writer, prettyPrinting)) {
+      for (final Gym gym : gyms) {
+        gymWriter.write(gym);
+      }
+    }
+
+    return writer;
+  }
+
+  @Benchmark
+  public List<Gym> streamRead() throws IOException {
+    final List<Gym> readGyms = new ArrayList<>(gymCount);
+
+    try (final GymJsonReader reader = new GymJsonReader(new StringReader(json))) {
+      while (reader.hasNext()) {
+        readGyms.add(reader.next());
+      }
+    }
+
+    return readGyms;
+  }
+}
@@ -0,0 +1,43 @@
+package org.pgp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.pgp.merge.GymMerge;
+import org.pgp.object.Gym;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+// The incremental path of GymScraper.main: copy geocodes across, then merge into the existing gyms.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GymMergeBenchmark {
+  @Param({"1000", "10000", "100000"})
+  private int gymCount;
+
+  @Param({"false", "true"})
+  private boolean removeMissing;
+
+  private Set<Gym> existingGyms;
+  private List<Gym> newGyms;
+
+  @Setup
+  public void setUp() {
+    final List<Gym> gyms = GymData.gyms(gymCount);
+
+    existingGyms = new TreeSet<>(gyms);
+    newGyms = GymData.rescrape(gyms);
+  }
+
+  @Benchmark
+  public Set<Gym> merge() {
+    GymMerge.copyGeocodes(existingGyms, newGyms);
+
+    return GymMerge.merge(existingGyms, newGyms, removeMissing).getGyms();
+  }
+}
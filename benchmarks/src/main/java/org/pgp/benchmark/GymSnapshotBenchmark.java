@@ -0,0 +1,67 @@
+package org.pgp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.pgp.io.GymSnapshotReader;
+import org.pgp.io.GymSnapshotWriter;
+import org.pgp.object.Gym;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The binary gym snapshot: writing it, reading it back whole, and looking single gyms up in the mapped file.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GymSnapshotBenchmark {
+  @Param({"1000", "10000", "100000"})
+  private int gymCount;
+
+  private List<Gym> gyms;
+  private String[] gymIds;
+  private File file;
+  private GymSnapshotReader reader;
+
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    gyms = GymData.gyms(gymCount);
+
+    gymIds = new String[gymCount];
+    for (int i = 0; i < gymCount; i++) {
+      gymIds[i] = gyms.get((int) ((i * 2_654_435_761L) % gymCount)).getGymId();
+    }
+
+    file = File.createTempFile("gyms", ".bin");
+    file.deleteOnExit();
+    GymSnapshotWriter.write(gyms, file);
+
+    reader = new GymSnapshotReader(file);
+  }
+
+  @Benchmark
+  public File write() throws IOException {
+    GymSnapshotWriter.write(gyms, file);
+    return file;
+  }
+
+  @Benchmark
+  public List<Gym> readAll() throws IOException {
+    return GymSnapshotReader.read(file, new ArrayList<>(gymCount));
+  }
+
+  @Benchmark
+  public Gym lookup() {
+    next = next + 1 < gymCount
+        ? next + 1
+        : 0;
+
+    return reader.get(gymIds[next]);
+  }
+}
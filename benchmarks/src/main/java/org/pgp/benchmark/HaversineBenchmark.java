@@ -0,0 +1,52 @@
+package org.pgp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.pgp.geocode.Haversine;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HaversineBenchmark {
+  private static final int POINTS = 1024;
+
+  private final double[] latitudes = new double[POINTS];
+  private final double[] longitudes = new double[POINTS];
+  private final double[] cosLatitudes = new double[POINTS];
+  private final double[] distances = new double[POINTS];
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(1L);
+    for (int i = 0; i < POINTS; i++) {
+      latitudes[i] = GymData.MIN_LAT + random.nextDouble() * (GymData.MAX_LAT - GymData.MIN_LAT);
+      longitudes[i] = GymData.MIN_LONG + random.nextDouble() * (GymData.MAX_LONG - GymData.MIN_LONG);
+      cosLatitudes[i] = Math.cos(Math.toRadians(latitudes[i]));
+    }
+  }
+
+  // one distance per operation, between consecutive points
+  @Benchmark
+  @OperationsPerInvocation(POINTS - 1)
+  public double distance() {
+    double total = 0d;
+    for (int i = 1; i < POINTS; i++) {
+      total += Haversine.distance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+    }
+    return total;
+  }
+
+  // one distance per operation, from the first point to every other with cosines precomputed
+  @Benchmark
+  @OperationsPerInvocation(POINTS - 1)
+  public double[] batchDistances() {
+    Haversine.distances(latitudes[0], longitudes[0], cosLatitudes[0], latitudes, longitudes, cosLatitudes, 1, POINTS,
+        Double.POSITIVE_INFINITY, distances);
+    return distances;
+  }
+}
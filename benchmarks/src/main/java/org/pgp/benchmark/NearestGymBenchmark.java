@@ -0,0 +1,45 @@
+package org.pgp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pgp.geocode.GymIndex;
+import org.pgp.object.Gym;
+import org.pgp.object.GymStore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The nearest gym lookup done for every gym in GeocodeGyms: building the index, then one query per gym.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearestGymBenchmark {
+  @Param({"1000", "10000", "100000"})
+  private int gymCount;
+
+  private List<Gym> gyms;
+  private GymStore store;
+  private GymIndex index;
+
+  @Setup
+  public void setUp() {
+    gyms = GymData.gyms(gymCount);
+    store = new GymStore(gyms);
+    index = new GymIndex(store);
+  }
+
+  @Benchmark
+  public GymIndex buildIndex() {
+    return new GymIndex(new GymStore(gyms));
+  }
+
+  @Benchmark
+  public void nearestForEveryGym(final Blackhole blackhole) {
+    for (int i = 0; i < store.size(); i++) {
+      blackhole.consume(index.nearest(i));
+    }
+  }
+}
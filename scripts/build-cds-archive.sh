@@ -0,0 +1,32 @@
+#!/bin/sh
+# Builds an AppCDS archive for GymScraper.jar from one training run, so later runs map the classes it loaded from
+# the archive rather than loading and verifying them again from the jar.  Needs Java 11 or later.
+#
+# Usage: build-cds-archive.sh <GymScraper.jar> <GymScraper arguments...>
+#
+# The training run is an ordinary run with the arguments given (writing gyms.json and so on as usual), so give it
+# those of the scheduled job: classes only loaded by options it doesn't use aren't archived.  Then run with
+#   java -XX:SharedArchiveFile=GymScraper.jsa -jar GymScraper.jar ...
+# giving the jar by the same path as here.  Rebuild the archive whenever the jar or the JDK changes; a stale
+# archive is ignored (with a warning) rather than used.
+set -e
+
+if [ $# -lt 1 ]; then
+  echo "Usage: $0 <GymScraper.jar> <GymScraper arguments...>" >&2
+  exit 1
+fi
+
+jar=$1
+shift
+
+archive="${jar%.jar}.jsa"
+classlist="${jar%.jar}.classlist"
+
+echo "Training run to record the classes loaded..."
+java -Xshare:off -XX:DumpLoadedClassList="$classlist" -jar "$jar" "$@"
+
+echo "Dumping $(wc -l < "$classlist") classes to $archive..."
+java -Xshare:dump -XX:SharedClassListFile="$classlist" -XX:SharedArchiveFile="$archive" -cp "$jar"
+
+rm -f "$classlist"
+echo "Run with: java -XX:SharedArchiveFile=$archive -jar $jar ..."
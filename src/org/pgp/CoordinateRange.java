@@ -4,6 +4,9 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
 
@@ -61,6 +64,13 @@ public final class CoordinateRange {
     midLong = minLong.add(maxLong.subtract(minLong).divide(new BigDecimal("2.0"), 8, RoundingMode.HALF_EVEN));
   }
 
+  // bounds included, as the database scraper's BETWEEN does
+  public boolean contains(final BigDecimal lat, final BigDecimal lng) {
+    return lat != null && lng != null &&
+        lat.compareTo(minLat) >= 0 && lat.compareTo(maxLat) <= 0 &&
+        lng.compareTo(minLong) >= 0 && lng.compareTo(maxLong) <= 0;
+  }
+
   public double area() {
     return Math.abs(maxLat.subtract(minLat).doubleValue() * maxLong.subtract(minLong).doubleValue());
   }
@@ -73,6 +83,18 @@ public final class CoordinateRange {
         new CoordinateRange(midLat, maxLat, midLong, maxLong));
   }
 
+  // Breadth-first subdivision into at least the given number of tiles, largest tiles split first.
+  public List<CoordinateRange> subDivide(final int minimumTiles) {
+    final Deque<CoordinateRange> tiles = new ArrayDeque<>();
+    tiles.add(this);
+
+    while (tiles.size() < minimumTiles) {
+      tiles.addAll(tiles.removeFirst().subDivide());
+    }
+
+    return new ArrayList<>(tiles);
+  }
+
   @Override
   public String toString() {
     return "<" + formatter.format(minLat) + "," + formatter.format(minLong) + " - " +
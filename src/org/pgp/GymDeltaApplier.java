@@ -0,0 +1,124 @@
+package org.pgp;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.io.GymDeltaFile;
+import org.pgp.io.GymJsonReader;
+import org.pgp.io.GymJsonWriter;
+import org.pgp.merge.GymDelta;
+import org.pgp.object.Gym;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Brings a copy of gyms.json up to date from the deltas GymScraper wrote with -deltaDirectory.
+public final class GymDeltaApplier {
+  private final static Logger logger = LogManager.getLogger(GymDeltaApplier.class);
+
+  private static void usage() {
+    System.err.println(
+        "Usage: GymDeltaApplier {-deltaDirectory=<directory GymScraper wrote deltas to>}\n" +
+            "                       {-output=<file name to write the updated gyms to>}\n" +
+            "                       [-base=<file name of the gyms the deltas apply to, none if omitted>\n" +
+            "                       [-fromSequence=<sequence of the last delta already in the base, defaults to 0>\n" +
+            "                       [-toSequence=<sequence of the last delta to apply, defaults to the latest>\n" +
+            "                       [-compactOutput=<true|false, write without whitespace, defaults to false if omitted>");
+  }
+
+  public static void main(final String[] args) throws IOException {
+    String deltaDirectory = null;
+    String output = null;
+    String base = null;
+    long fromSequence = 0L;
+    long toSequence = Long.MAX_VALUE;
+    boolean compactOutput = false;
+
+    for (final String arg: args) {
+      if (!arg.startsWith("-")) {
+        continue;
+      }
+
+      final String[] splitArg = arg.substring(1).split("=");
+      if (splitArg.length != 2) {
+        continue;
+      }
+
+      switch (splitArg[0].toLowerCase()) {
+        case "deltadirectory": {
+          deltaDirectory = splitArg[1];
+          break;
+        }
+        case "output": {
+          output = splitArg[1];
+          break;
+        }
+        case "base": {
+          base = splitArg[1];
+          break;
+        }
+        case "fromsequence": {
+          fromSequence = Long.parseLong(splitArg[1]);
+          break;
+        }
+        case "tosequence": {
+          toSequence = Long.parseLong(splitArg[1]);
+          break;
+        }
+        case "compactoutput": {
+          compactOutput = Boolean.parseBoolean(splitArg[1]);
+          break;
+        }
+      }
+    }
+
+    if (deltaDirectory == null || output == null) {
+      usage();
+      System.exit(-1);
+    }
+
+    final Set<Gym> gyms = base != null
+        ? GymJsonReader.read(new File(base), new TreeSet<>())
+        : new TreeSet<>();
+
+    final GymDelta delta = collect(Paths.get(deltaDirectory), fromSequence, toSequence);
+    final Set<Gym> updatedGyms = delta.apply(gyms);
+
+    GymJsonWriter.write(updatedGyms, new File(output), !compactOutput);
+
+    logger.info("Applied deltas " + (fromSequence + 1L) + " to " + delta.getSequence() + " to " + gyms.size() +
+        " gyms: " + delta.getAdded().size() + " added, " + delta.getUpdated().size() + " updated, " +
+        delta.getRemoved().size() + " removed, " + updatedGyms.size() + " gyms now; next apply with -fromSequence=" +
+        delta.getSequence() + ".");
+  }
+
+  // Folds the deltas after fromSequence up to toSequence into one, failing on any gap in the sequence.
+  public static GymDelta collect(final Path deltaDirectory, final long fromSequence, final long toSequence)
+      throws IOException {
+    final GymDelta delta = new GymDelta();
+    delta.setSequence(fromSequence);
+
+    for (final Map.Entry<Long, Path> entry : GymDeltaFile.list(deltaDirectory).entrySet()) {
+      final long sequence = entry.getKey();
+
+      if (sequence <= fromSequence || sequence > toSequence) {
+        continue;
+      }
+      if (sequence != delta.getSequence() + 1L) {
+        throw new IOException("Delta " + (delta.getSequence() + 1L) + " is missing from '" + deltaDirectory + "'.");
+      }
+
+      delta.addAll(GymDeltaFile.read(entry.getValue()));
+    }
+
+    if (toSequence != Long.MAX_VALUE && delta.getSequence() != toSequence) {
+      throw new IOException("Delta " + (delta.getSequence() + 1L) + " is missing from '" + deltaDirectory + "'.");
+    }
+
+    return delta;
+  }
+}
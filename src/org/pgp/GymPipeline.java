@@ -0,0 +1,131 @@
+package org.pgp;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.geocode.GeocodeGyms;
+import org.pgp.merge.GymMerge;
+import org.pgp.metrics.Metrics;
+import org.pgp.metrics.Stage;
+import org.pgp.object.Gym;
+import org.pgp.scrape.AreaScraper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Overlaps scraping an area with geocoding it: the scraper streams gyms into a bounded queue from its own thread
+// while this one takes them off, copies over existing geocoding data and starts their geocoding. When geocoding
+// falls behind the queue fills up and the scraper waits, rather than gyms piling up in memory.
+public final class GymPipeline {
+  private final static Logger logger = LogManager.getLogger(GymPipeline.class);
+
+  private static final long POLL_MILLIS = 100L;
+
+  private GymPipeline() {
+  }
+
+  // Returns the gyms scraped, with geocoding under way in the session. existingGyms are those to copy geocoding
+  // data from, null for none. Fails if the scrape doesn't complete, closing the session.
+  public static Set<Gym> scrape(final AreaScraper scraper, final CoordinateRange coordinateRange, final int queueSize,
+                                final Set<Gym> existingGyms, final GeocodeGyms.Session geocoding)
+      throws IOException {
+    final BlockingQueue<Gym> queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    final Consumer<Gym> copyGeocodes = existingGyms != null
+        ? GymMerge.geocodeCopier(existingGyms)
+        : gym -> {
+    };
+    final Set<Gym> gyms = new TreeSet<>();
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "gym-pipeline-scrape");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    // scrapers may pass gyms on from threads of their own, so it's a flag rather than an interrupt that stops them
+    final AtomicBoolean closed = new AtomicBoolean();
+    final Consumer<Gym> sink = gym -> {
+      try {
+        final long start = System.nanoTime();
+        while (!queue.offer(gym, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (closed.get()) {
+            throw new CancellationException("Pipeline closed.");
+          }
+        }
+        Metrics.timer("pipeline.queue-wait").recordSince(start);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("Interrupted.");
+      }
+    };
+
+    boolean completed = false;
+    try (final Stage stage = Metrics.stage("scrape")) {
+      final Future<Boolean> scrape = executor.submit(() -> scraper.scrapeArea(coordinateRange, sink));
+
+      final List<Gym> taken = new ArrayList<>();
+      boolean scraping = true;
+      while (scraping) {
+        final Gym gym = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+        if (gym != null) {
+          taken.add(gym);
+        } else if (scrape.isDone()) {
+          scraping = false;
+        }
+        // anything queued before the scrape finished is still to come
+        queue.drainTo(taken);
+        if (taken.isEmpty()) {
+          continue;
+        }
+
+        for (final Gym takenGym : taken) {
+          copyGeocodes.accept(takenGym);
+          if (gyms.add(takenGym)) {
+            geocoding.accept(takenGym);
+          }
+        }
+        Metrics.histogram("pipeline.batch-size").record(taken.size());
+        taken.clear();
+      }
+
+      if (!scrape.get()) {
+        throw new IOException("Scraping " + coordinateRange + " did not complete.");
+      }
+
+      stage.setItems(gyms.size());
+      completed = true;
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } finally {
+      closed.set(true);
+      executor.shutdownNow();
+
+      if (!completed) {
+        geocoding.close();
+      }
+    }
+
+    logger.info("Scraped " + gyms.size() + " gyms, geocoding already started for those that needed it.");
+
+    return gyms;
+  }
+}
@@ -1,22 +1,39 @@
 package org.pgp;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.pgp.config.ScraperConfiguration;
+import org.pgp.daemon.GymDaemon;
+import org.pgp.geocode.GeocodeCache;
 import org.pgp.geocode.GeocodeGyms;
+import org.pgp.io.GymDictionaryJson;
+import org.pgp.io.GymJsonReader;
+import org.pgp.io.GymDeltaFile;
+import org.pgp.io.GymJsonWriter;
+import org.pgp.io.GymSnapshotWriter;
+import org.pgp.merge.GymDelta;
+import org.pgp.merge.GymMerge;
+import org.pgp.metrics.Metrics;
+import org.pgp.metrics.Stage;
+import org.pgp.object.GeocodePool;
 import org.pgp.object.Gym;
 import org.pgp.scrape.AreaScraper;
-import org.springframework.context.support.FileSystemXmlApplicationContext;
+import org.pgp.scrape.ChangeSet;
+import org.pgp.scrape.IncrementalAreaScraper;
+import org.pgp.scrape.PineDatabaseScraper;
+import org.pgp.scrape.PineDatabaseWriter;
 
 import java.io.*;
-import java.math.BigDecimal;
-import java.math.MathContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 public final class GymScraper {
   private final static Logger logger = LogManager.getLogger(GymScraper.class);
@@ -26,117 +43,175 @@ public final class GymScraper {
         "Usage: GymScraper {-scraper=<scraper configuration file>}\n" +
             "                  {-minLat=<minimum latitude to scrape>} {-maxLat=<maximum latitude to scrape>}\n" +
             "                  {-minLong=<minimum longitude to scrape>} {-maxLong=<maximum longitude to scrape>}\n" +
+            "                  [-ranges=<further areas to scrape, as minLat,maxLat,minLong,maxLong;...>\n" +
             "                  [-googleApiKey=<Google maps API key for reverse geocoding, geocoding not done if omitted>\n" +
-            "                  [-existingGyms=<file name of existing gyms to amend and add to, optional>\n" +
+            "                  [-existingGyms=<file name of existing gyms to amend and add to, gzip or deflate compressed or not, optional>\n" +
             "                  [-removeMissingGyms=<true|false, defaults to false if omitted>\n" +
-            "                  [-geocodeOnly=<true|false, defaults to false if omitted>");
+            "                  [-geocodeOnly=<true|false, defaults to false if omitted>\n" +
+            "                  [-compactOutput=<true|false, write gyms.json without whitespace, defaults to false if omitted>\n" +
+            "                  [-dictionaryOutput=<true|false, write shared geocode information to gyms.json once, defaults to false if omitted>\n" +
+            "                  [-compression=<none|gzip|deflate, writes gyms.json.gz or gyms.json.deflate instead, defaults to none if omitted>\n" +
+            "                  [-compressionLevel=<0-9, 1 fastest and 9 smallest, defaults to 6 if omitted>\n" +
+            "                  [-snapshotFile=<file name to also write gyms to as a binary snapshot, optional>\n" +
+            "                  [-deltaDirectory=<directory to also write each run's added, updated and removed gyms to, optional>\n" +
+            "                  [-writeBack=<true|false, also write changed gyms back to the Pine database scraped, defaults to false if omitted>\n" +
+            "                  [-writeBackBatchSize=<gyms written back per batch and transaction, defaults to 500>\n" +
+            "                  [-writeBackAddressColumn=<Gym table column to write geocodes to as json, not written if omitted>\n" +
+            "                  [-writeBackPlacesColumn=<Gym table column to write nearby places to as json, not written if omitted>\n" +
+            "                  [-geocodeCache=<file name of persistent geocode cache, not cached between runs if omitted>\n" +
+            "                  [-geocodeCacheTtlDays=<days before cached geocode results expire, defaults to 30>\n" +
+            "                  [-geocodeCacheMaxEntries=<maximum number of cached geocode results, defaults to 250000>\n" +
+            "                  [-geocodeMaxInFlight=<maximum concurrent Google maps requests, defaults to 16>\n" +
+            "                  [-geocodeQps=<maximum Google maps requests per second, 0 for no limit, defaults to 10>\n" +
+            "                  [-googleApiBaseUrl=<base url to send Google maps requests to instead, e.g. a local test server>\n" +
+            "                  [-pipelined=<true|false, start geocoding gyms while still scraping, defaults to false if omitted>\n" +
+            "                  [-pipelineQueueSize=<gyms scraped ahead of geocoding when pipelined, defaults to 1000>\n" +
+            "                  [-metricsFile=<file name to write run metrics to as json, not written if omitted>\n" +
+            "                  [-daemon=<true|false, keep running, refreshing on a schedule and serving gym queries>\n" +
+            "                  [-refreshMinutes=<minutes between daemon refreshes, defaults to 60>\n" +
+            "                  [-daemonHost=<address the daemon's query API listens on, defaults to 127.0.0.1>\n" +
+            "                  [-daemonPort=<port the daemon's query API listens on, defaults to 8080>");
   }
 
-  private static AreaScraper from(final String scraperConfiguration) {
-    try (final FileSystemXmlApplicationContext context = new FileSystemXmlApplicationContext(scraperConfiguration)) {
-      return context.getBean("scraper", AreaScraper.class);
+  public static AreaScraper from(final String scraperConfiguration) {
+    return ScraperConfiguration.load(scraperConfiguration);
+  }
+
+  // Gyms produced by scraping one area, how they differ from the gyms before, and the scraper's change set to
+  // commit once they have been written.
+  public static final class Result {
+    private final Set<Gym> gyms;
+    private final GymDelta delta;
+    private final ChangeSet changeSet;
+
+    private Result(final Set<Gym> gyms, final GymDelta delta, final ChangeSet changeSet) {
+      this.gyms = gyms;
+      this.delta = delta;
+      this.changeSet = changeSet;
+    }
+
+    public Set<Gym> getGyms() {
+      return gyms;
+    }
+
+    public GymDelta getDelta() {
+      return delta;
+    }
+
+    public void commit() throws IOException {
+      if (changeSet != null) {
+        changeSet.commit();
+      }
     }
   }
 
   public static void main(final String[] args) throws IOException {
-    BigDecimal minLat = null;
-    BigDecimal maxLat = null;
+    final ScrapeOptions options = ScrapeOptions.parse(args);
 
-    BigDecimal minLong = null;
-    BigDecimal maxLong = null;
+    if (!options.isValid()) {
+      usage();
+      System.exit(-1);
+    }
 
-    String _scraperConfiguration = null;
+    if (options.isDaemon()) {
+      new GymDaemon(options).start();
+      return;
+    }
 
-    boolean _incrementalUpdate = false;
-    String existingGymsFilename = null;
-    boolean _removeMissingGyms = false;
+    final Set<Gym> existingGyms = loadExistingGyms(options);
+    final GeocodeCache geocodeCache = openGeocodeCache(options);
 
-    boolean geocodeOnly = false;
+    // geocoding only needs the scraper to write back to
+    final AreaScraper scraper = !options.isGeocodeOnly() || options.isWriteBack()
+        ? GymScraper.from(options.getScraperConfiguration())
+        : null;
 
-    String _googleApiKey = null;
+    final List<Result> results;
+    if (options.isGeocodeOnly()) {
+      results = Collections.singletonList(run(options, null, null, existingGyms, options.isIncrementalUpdate(),
+          false, options.isRemoveMissingGyms(), geocodeCache));
+    } else {
+      results = scrape(options, scraper, existingGyms, options.isIncrementalUpdate(), geocodeCache);
+    }
 
-    for (final String arg: args) {
-      if (!arg.startsWith("-")) {
-        continue;
-      }
+    write(results, options);
+    writeBack(results, scraper, options);
 
-      final String[] splitArg = arg.substring(1).split("=");
-      if (splitArg.length != 2) {
-        continue;
-      }
+    for (final Result result : results) {
+      result.commit();
+    }
 
-      final String value = splitArg[1];
+    if (options.getMetricsFilename() != null) {
+      Metrics.writeSummary(Paths.get(options.getMetricsFilename()));
+    }
+  }
 
-      switch (splitArg[0].toLowerCase()) {
-        case "minlat": {
-          minLat = new BigDecimal(value, MathContext.DECIMAL32);
-          break;
-        }
-        case "maxlat": {
-          maxLat = new BigDecimal(value, MathContext.DECIMAL32);
-          break;
-        }
-        case "minlong": {
-          minLong = new BigDecimal(value, MathContext.DECIMAL32);
-          break;
-        }
-        case "maxlong": {
-          maxLong = new BigDecimal(value, MathContext.DECIMAL32);
-          break;
-        }
-        case "scraper": {
-          _scraperConfiguration = value;
-          break;
-        }
-        case "existinggyms": {
-          existingGymsFilename = value;
-          _incrementalUpdate = true;
-          break;
-        }
-        case "removemissinggyms": {
-          _removeMissingGyms = Boolean.parseBoolean(value);
-          break;
-        }
-        case "googleapikey": {
-          _googleApiKey = value;
-          break;
-        }
-        case "geocodeonly": {
-          geocodeOnly = Boolean.parseBoolean(value);
-          break;
-        }
-      }
+  // Scrapes every configured area in turn, each further area merged into the gyms of those before it.
+  // Gyms missing from a scraped area can only be told apart from gyms in other areas with a single area.
+  // Only an incremental update reads just the changes in an area; merging further areas still reads them whole.
+  public static List<Result> scrape(final ScrapeOptions options, final AreaScraper scraper,
+                                    final Set<Gym> existingGyms, final boolean incrementalUpdate,
+                                    final GeocodeCache geocodeCache) throws IOException {
+    final List<CoordinateRange> coordinateRanges = options.getCoordinateRanges();
+    final List<Result> results = new ArrayList<>(coordinateRanges.size());
+
+    Set<Gym> gyms = existingGyms;
+    for (final CoordinateRange coordinateRange : coordinateRanges) {
+      final Result result = run(options, scraper, coordinateRange, gyms, incrementalUpdate || !results.isEmpty(),
+          incrementalUpdate, options.isRemoveMissingGyms() && coordinateRanges.size() == 1, geocodeCache);
+
+      results.add(result);
+      gyms = result.getGyms();
     }
 
-    final String googleApiKey = _googleApiKey;
-    final String scraperConfiguration = _scraperConfiguration;
+    return results;
+  }
 
-    if ((scraperConfiguration == null || minLat == null || maxLat == null || minLong == null || maxLong == null) && !geocodeOnly) {
-      usage();
+  public static Set<Gym> loadExistingGyms(final ScrapeOptions options) throws IOException {
+    final String existingGymsFilename = options.getExistingGymsFilename();
+
+    if (existingGymsFilename == null) {
+      return new TreeSet<>();
+    }
+
+    final File existingGymsFile = Paths.get(existingGymsFilename).toFile();
+
+    if (!existingGymsFile.exists()) {
+      System.err.println("File '" + existingGymsFilename + "' does not exist!");
       System.exit(-1);
     }
 
+    final GeocodePool pool = new GeocodePool();
     final Set<Gym> existingGyms;
-    final Set<Gym> newGyms;
-    final Set<Gym> allNewGyms;
+    try (final Stage stage = Metrics.stage("load-existing")) {
+      existingGyms = GymJsonReader.read(existingGymsFile, new TreeSet<>(), pool);
+      stage.setItems(existingGyms.size());
+    }
+    logger.info("Loaded " + existingGyms.size() + " existing gyms, " + pool + ".");
 
-    if (existingGymsFilename != null) {
-      final File existingGymsFile = Paths.get(existingGymsFilename).toFile();
+    return existingGyms;
+  }
 
-      if (!existingGymsFile.exists()) {
-        System.err.println("File '" + existingGymsFilename + "' does not exist!");
-        System.exit(-1);
-      }
-      try (final BufferedReader input = new BufferedReader(new FileReader(existingGymsFile))) {
-        existingGyms = new TreeSet<>(Arrays.asList(new Gson().fromJson(input, Gym[].class)));
-      }
-      logger.info("Loaded " + existingGyms.size() + " existing gyms.");
-    } else {
-      existingGyms = new TreeSet<>();
+  public static GeocodeCache openGeocodeCache(final ScrapeOptions options) throws IOException {
+    if (options.getGoogleApiKey() == null || options.getGeocodeCacheFilename() == null) {
+      return null;
     }
 
-    final boolean incrementalUpdate = _incrementalUpdate;
-    final boolean removeMissingGyms = _removeMissingGyms;
+    final GeocodeCache geocodeCache = new GeocodeCache(Paths.get(options.getGeocodeCacheFilename()),
+        options.getGeocodeCacheTtlDays(), TimeUnit.DAYS, options.getGeocodeCacheMaxEntries());
+    geocodeCache.load();
+
+    return geocodeCache;
+  }
+
+  // Scrapes one area (or with no scraper, takes the existing gyms as they are), geocodes and merges. With
+  // incrementalUpdate the area is merged into the existing gyms, otherwise it replaces them; readChanges reads only
+  // what changed in the area since the last run from scrapers that can, and only makes sense merging.
+  public static Result run(final ScrapeOptions options, final AreaScraper scraper,
+                           final CoordinateRange coordinateRange, final Set<Gym> existingGyms,
+                           final boolean incrementalUpdate, final boolean readChanges,
+                           final boolean removeMissingGyms, final GeocodeCache geocodeCache) throws IOException {
+    final String googleApiKey = options.getGoogleApiKey();
 
     logger.info("Update mode is " + (incrementalUpdate
         ? "incremental"
@@ -146,52 +221,190 @@ public final class GymScraper {
       logger.info("Removal of missing gyms from existing gyms in scraped area enabled.");
     }
 
-    if (!geocodeOnly) {
-      newGyms = GymScraper.from(scraperConfiguration)
-          .scrapeArea(new CoordinateRange(minLat, maxLat, minLong, maxLong));
-      allNewGyms = newGyms;
+    final GeocodeGyms geocoder = googleApiKey != null
+        ? new GeocodeGyms(googleApiKey, geocodeCache, options.getGeocodeMaxInFlight(), options.getGeocodeQps(),
+        options.getGoogleApiBaseUrl())
+        : null;
+
+    final Set<Gym> newGyms;
+    final ChangeSet changeSet;
+    GeocodeGyms.Session geocoding = null;
+
+    final boolean readsChanges = incrementalUpdate && readChanges && scraper instanceof IncrementalAreaScraper;
+    if (scraper != null && !readsChanges && geocoder != null && options.isPipelined()) {
+      changeSet = null;
+      geocoding = geocoder.start(incrementalUpdate);
+      newGyms = GymPipeline.scrape(scraper, coordinateRange, options.getPipelineQueueSize(), incrementalUpdate
+          ? existingGyms
+          : null, geocoding);
+    } else if (scraper != null) {
+      try (final Stage stage = Metrics.stage("scrape")) {
+        if (readsChanges) {
+          changeSet = ((IncrementalAreaScraper) scraper).scrapeChanges(coordinateRange);
+          newGyms = changeSet.getChangedGyms();
+        } else {
+          changeSet = null;
+          newGyms = scraper.scrapeArea(coordinateRange);
+        }
+        stage.setItems(newGyms.size());
+      }
     } else {
+      changeSet = null;
       newGyms = existingGyms;
-      allNewGyms = existingGyms;
     }
 
+    // With only changed gyms read, nearest gyms have to be found against the merged set, so merge first
+    final boolean changesOnly = changeSet != null && !changeSet.isComplete();
+    Set<Gym> outputGyms = null;
+    GymDelta delta = null;
+
+    if (googleApiKey != null && incrementalUpdate && geocoding == null) {
+      // Copy geocoding data from existing gyms (the pipeline copies it as gyms are scraped)
+      GymMerge.copyGeocodes(existingGyms, newGyms);
+    }
+
+    if (changesOnly) {
+      if (removeMissingGyms) {
+        logger.info("Only changes were read, so gyms are removed by their deletion rather than being missing.");
+      }
+      try (final Stage stage = Metrics.stage("merge")) {
+        final GymMerge.Result merge = GymMerge.merge(existingGyms, newGyms, false, changeSet.getRemovedGymIds());
+        outputGyms = merge.getGyms();
+        delta = GymDelta.of(merge);
+        stage.setItems(outputGyms.size());
+      }
+    }
+
+    List<Gym> geocodedGyms = Collections.emptyList();
+
     if (googleApiKey != null) {
-      if (incrementalUpdate) {
-        // Copy geocoding data from existing gyms
-        existingGyms.forEach(gym -> {
-          newGyms.stream()
-              .filter(newGym -> newGym.getGymId().equals(gym.getGymId()))
-              .findFirst()
-              .ifPresent(newGym -> {
-                newGym.getGymInfo().setAddressComponents(gym.getGymInfo().getAddressComponents());
-                newGym.getGymInfo().setPlaces(gym.getGymInfo().getPlaces());
-              });
-        });
+      try (final Stage stage = Metrics.stage("geocode")) {
+        final Set<Gym> gymsToGeocode = changesOnly
+            ? outputGyms
+            : newGyms;
+        geocodedGyms = geocoding != null
+            ? geocoding.finish(gymsToGeocode)
+            : geocoder.geocode(gymsToGeocode, incrementalUpdate);
+        stage.setItems(gymsToGeocode.size());
+      }
+
+      if (geocodeCache != null) {
+        geocodeCache.save();
       }
+    }
 
-      new GeocodeGyms(googleApiKey).geocode(newGyms, incrementalUpdate);
+    if (!changesOnly) {
+      try (final Stage stage = Metrics.stage("merge")) {
+        if (incrementalUpdate) {
+          final GymMerge.Result merge = GymMerge.merge(existingGyms, newGyms, removeMissingGyms);
+          outputGyms = merge.getGyms();
+          delta = GymDelta.of(merge);
+        } else {
+          outputGyms = newGyms;
+          delta = new GymDelta(true);
+          outputGyms.forEach(delta::add);
+        }
+        stage.setItems(outputGyms.size());
+      }
     }
 
-    final Set<Gym> outputGyms;
+    // geocoding updates gyms in place, which the merge may not have seen, e.g. when a new gym changes which gym
+    // is nearest to an existing one
+    geocodedGyms.forEach(delta::update);
 
-    if (incrementalUpdate) {
-      if (removeMissingGyms) {
-        final Set<Gym> missingGyms = new HashSet<>(existingGyms);
-        missingGyms.removeAll(allNewGyms);
+    return new Result(outputGyms, delta, changeSet);
+  }
+
+  // Writes the gyms of the last area scraped, which include those of the areas before it.
+  public static void write(final List<Result> results, final ScrapeOptions options) throws IOException {
+    final Set<Gym> gyms = results.get(results.size() - 1).getGyms();
+
+    final File gymsFile = new File("gyms.json" + options.getCompression().getExtension());
+
+    logger.info("Writing out gym information with locations and descriptions.");
+    try (final Stage stage = Metrics.stage("write")) {
+      if (options.isDictionaryOutput()) {
+        GymDictionaryJson.write(gyms, gymsFile, !options.isCompactOutput(), options.getCompression(),
+            options.getCompressionLevel());
+      } else {
+        GymJsonWriter.write(gyms, gymsFile, !options.isCompactOutput(), options.getCompression(),
+            options.getCompressionLevel());
+      }
+      stage.setItems(gyms.size());
+    }
 
-        existingGyms.removeAll(missingGyms);
+    if (options.getSnapshotFilename() != null) {
+      try (final Stage stage = Metrics.stage("write-snapshot")) {
+        GymSnapshotWriter.write(gyms, new File(options.getSnapshotFilename()));
+        stage.setItems(gyms.size());
       }
-      existingGyms.removeAll(newGyms);
-      existingGyms.addAll(newGyms);
+      logger.info("Wrote binary gym snapshot to '" + options.getSnapshotFilename() + "'.");
+    }
 
-      outputGyms = existingGyms;
-    } else {
-      outputGyms = newGyms;
+    if (options.getDeltaDirectory() != null) {
+      writeDelta(results, Paths.get(options.getDeltaDirectory()), !options.isCompactOutput());
+    }
+  }
+
+  // Writes the gyms the run added or updated back to the Pine database, if asked to. Done before change sets are
+  // committed, so if it fails the next incremental run scrapes the same changes again.
+  public static void writeBack(final List<Result> results, final AreaScraper scraper, final ScrapeOptions options)
+      throws IOException {
+    if (!options.isWriteBack()) {
+      return;
     }
 
-    logger.info("Writing out gym information with locations and descriptions.");
-    try (final BufferedWriter writer = new BufferedWriter(new FileWriter("gyms.json"))) {
-      writer.write(new GsonBuilder().setPrettyPrinting().create().toJson(outputGyms));
+    if (!(scraper instanceof PineDatabaseScraper)) {
+      logger.error("Gyms can only be written back to a Pine database scraper's database, not writing back.");
+      return;
+    }
+
+    final GymDelta delta = new GymDelta();
+    for (final Result result : results) {
+      delta.addAll(result.getDelta());
+    }
+
+    final List<Gym> gyms = new ArrayList<>(delta.getAdded());
+    gyms.addAll(delta.getUpdated());
+    if (gyms.isEmpty()) {
+      logger.info("No gyms changed, nothing to write back.");
+      return;
+    }
+
+    try (final Stage stage = Metrics.stage("write-back")) {
+      final PineDatabaseWriter writer = ((PineDatabaseScraper) scraper).writer(options.getWriteBackBatchSize(),
+          options.getWriteBackAddressColumn(), options.getWriteBackPlacesColumn());
+      stage.setItems(writer.write(gyms));
+    } catch (final SQLException e) {
+      throw new IOException("Writing gyms back to the database failed.", e);
+    }
+  }
+
+  private static void writeDelta(final List<Result> results, final Path deltaDirectory, final boolean prettyPrinting)
+      throws IOException {
+    final GymDelta delta = new GymDelta();
+    for (final Result result : results) {
+      delta.addAll(result.getDelta());
+    }
+
+    if (delta.isEmpty()) {
+      logger.info("No gyms changed, no delta written.");
+      return;
+    }
+
+    try (final Stage stage = Metrics.stage("write-delta")) {
+      Files.createDirectories(deltaDirectory);
+
+      delta.setSequence(GymDeltaFile.lastSequence(deltaDirectory) + 1L);
+      final Path file = GymDeltaFile.path(deltaDirectory, delta.getSequence());
+      GymDeltaFile.write(delta, file, prettyPrinting);
+
+      stage.setItems(delta.size());
+      logger.info("Wrote delta " + delta.getSequence() + " to '" + file + "': " + delta.getAdded().size() +
+          " added, " + delta.getUpdated().size() + " updated, " + delta.getRemoved().size() + " removed" +
+          (delta.isComplete()
+              ? ", replacing all gyms."
+              : "."));
     }
   }
 }
@@ -0,0 +1,373 @@
+package org.pgp;
+
+import org.pgp.io.Compression;
+import org.pgp.scrape.PineDatabaseWriter;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Command line settings of a run, in -name=value form.
+public final class ScrapeOptions {
+  private BigDecimal minLat = null;
+  private BigDecimal maxLat = null;
+
+  private BigDecimal minLong = null;
+  private BigDecimal maxLong = null;
+
+  private final List<CoordinateRange> coordinateRanges = new ArrayList<>();
+
+  private String scraperConfiguration = null;
+
+  private boolean incrementalUpdate = false;
+  private String existingGymsFilename = null;
+  private boolean removeMissingGyms = false;
+
+  private boolean geocodeOnly = false;
+  private boolean compactOutput = false;
+  private boolean dictionaryOutput = false;
+  private Compression compression = Compression.NONE;
+  private int compressionLevel = Compression.DEFAULT_LEVEL;
+  private String snapshotFilename = null;
+  private String deltaDirectory = null;
+
+  private boolean writeBack = false;
+  private int writeBackBatchSize = 500;
+  private String writeBackAddressColumn = null;
+  private String writeBackPlacesColumn = null;
+
+  private String googleApiKey = null;
+
+  private String geocodeCacheFilename = null;
+  private long geocodeCacheTtlDays = 30L;
+  private int geocodeCacheMaxEntries = 250_000;
+
+  private int geocodeMaxInFlight = 16;
+  private double geocodeQps = 10d;
+  private String googleApiBaseUrl = null;
+
+  private boolean pipelined = false;
+  private int pipelineQueueSize = 1_000;
+
+  private String metricsFilename = null;
+
+  private boolean daemon = false;
+  private long refreshMinutes = 60L;
+  private String daemonHost = "127.0.0.1";
+  private int daemonPort = 8080;
+
+  private ScrapeOptions() {
+  }
+
+  public static ScrapeOptions parse(final String[] args) {
+    final ScrapeOptions options = new ScrapeOptions();
+
+    for (final String arg: args) {
+      if (!arg.startsWith("-")) {
+        continue;
+      }
+
+      final String[] splitArg = arg.substring(1).split("=");
+      if (splitArg.length != 2) {
+        continue;
+      }
+
+      final String value = splitArg[1];
+
+      switch (splitArg[0].toLowerCase()) {
+        case "minlat": {
+          options.minLat = new BigDecimal(value, MathContext.DECIMAL32);
+          break;
+        }
+        case "maxlat": {
+          options.maxLat = new BigDecimal(value, MathContext.DECIMAL32);
+          break;
+        }
+        case "minlong": {
+          options.minLong = new BigDecimal(value, MathContext.DECIMAL32);
+          break;
+        }
+        case "maxlong": {
+          options.maxLong = new BigDecimal(value, MathContext.DECIMAL32);
+          break;
+        }
+        case "ranges": {
+          for (final String range : value.split(";")) {
+            final String[] bounds = range.split(",");
+            if (bounds.length != 4) {
+              throw new IllegalArgumentException("Range '" + range + "' is not minLat,maxLat,minLong,maxLong.");
+            }
+            options.coordinateRanges.add(new CoordinateRange(
+                new BigDecimal(bounds[0].trim(), MathContext.DECIMAL32),
+                new BigDecimal(bounds[1].trim(), MathContext.DECIMAL32),
+                new BigDecimal(bounds[2].trim(), MathContext.DECIMAL32),
+                new BigDecimal(bounds[3].trim(), MathContext.DECIMAL32)));
+          }
+          break;
+        }
+        case "scraper": {
+          options.scraperConfiguration = value;
+          break;
+        }
+        case "existinggyms": {
+          options.existingGymsFilename = value;
+          options.incrementalUpdate = true;
+          break;
+        }
+        case "removemissinggyms": {
+          options.removeMissingGyms = Boolean.parseBoolean(value);
+          break;
+        }
+        case "googleapikey": {
+          options.googleApiKey = value;
+          break;
+        }
+        case "geocodeonly": {
+          options.geocodeOnly = Boolean.parseBoolean(value);
+          break;
+        }
+        case "compactoutput": {
+          options.compactOutput = Boolean.parseBoolean(value);
+          break;
+        }
+        case "dictionaryoutput": {
+          options.dictionaryOutput = Boolean.parseBoolean(value);
+          break;
+        }
+        case "compression": {
+          options.compression = Compression.parse(value);
+          break;
+        }
+        case "compressionlevel": {
+          options.compressionLevel = Integer.parseInt(value);
+          if (options.compressionLevel < 0 || options.compressionLevel > 9) {
+            throw new IllegalArgumentException("Compression level '" + value + "' is not between 0 and 9.");
+          }
+          break;
+        }
+        case "snapshotfile": {
+          options.snapshotFilename = value;
+          break;
+        }
+        case "deltadirectory": {
+          options.deltaDirectory = value;
+          break;
+        }
+        case "writeback": {
+          options.writeBack = Boolean.parseBoolean(value);
+          break;
+        }
+        case "writebackbatchsize": {
+          options.writeBackBatchSize = Integer.parseInt(value);
+          break;
+        }
+        case "writebackaddresscolumn": {
+          options.writeBackAddressColumn = value;
+          if (!PineDatabaseWriter.isColumnName(value)) {
+            throw new IllegalArgumentException("Write back address column '" + value + "' is not a plain column name.");
+          }
+          break;
+        }
+        case "writebackplacescolumn": {
+          options.writeBackPlacesColumn = value;
+          if (!PineDatabaseWriter.isColumnName(value)) {
+            throw new IllegalArgumentException("Write back places column '" + value + "' is not a plain column name.");
+          }
+          break;
+        }
+        case "geocodecache": {
+          options.geocodeCacheFilename = value;
+          break;
+        }
+        case "geocodecachettldays": {
+          options.geocodeCacheTtlDays = Long.parseLong(value);
+          break;
+        }
+        case "geocodecachemaxentries": {
+          options.geocodeCacheMaxEntries = Integer.parseInt(value);
+          break;
+        }
+        case "geocodemaxinflight": {
+          options.geocodeMaxInFlight = Integer.parseInt(value);
+          break;
+        }
+        case "geocodeqps": {
+          options.geocodeQps = Double.parseDouble(value);
+          break;
+        }
+        case "googleapibaseurl": {
+          options.googleApiBaseUrl = value;
+          break;
+        }
+        case "pipelined": {
+          options.pipelined = Boolean.parseBoolean(value);
+          break;
+        }
+        case "pipelinequeuesize": {
+          options.pipelineQueueSize = Integer.parseInt(value);
+          break;
+        }
+        case "metricsfile": {
+          options.metricsFilename = value;
+          break;
+        }
+        case "daemon": {
+          options.daemon = Boolean.parseBoolean(value);
+          break;
+        }
+        case "refreshminutes": {
+          options.refreshMinutes = Long.parseLong(value);
+          if (options.refreshMinutes <= 0L) {
+            throw new IllegalArgumentException("Refresh minutes '" + value + "' is not positive.");
+          }
+          break;
+        }
+        case "daemonhost": {
+          options.daemonHost = value;
+          break;
+        }
+        case "daemonport": {
+          options.daemonPort = Integer.parseInt(value);
+          break;
+        }
+      }
+    }
+
+    if (options.minLat != null && options.maxLat != null && options.minLong != null && options.maxLong != null) {
+      options.coordinateRanges.add(0, new CoordinateRange(options.minLat, options.maxLat, options.minLong,
+          options.maxLong));
+    }
+
+    return options;
+  }
+
+  public boolean isValid() {
+    if (geocodeOnly) {
+      return !daemon && (!writeBack || scraperConfiguration != null);
+    }
+
+    return scraperConfiguration != null && !coordinateRanges.isEmpty();
+  }
+
+  public List<CoordinateRange> getCoordinateRanges() {
+    return Collections.unmodifiableList(coordinateRanges);
+  }
+
+  public String getScraperConfiguration() {
+    return scraperConfiguration;
+  }
+
+  public boolean isIncrementalUpdate() {
+    return incrementalUpdate;
+  }
+
+  public String getExistingGymsFilename() {
+    return existingGymsFilename;
+  }
+
+  public boolean isRemoveMissingGyms() {
+    return removeMissingGyms;
+  }
+
+  public boolean isGeocodeOnly() {
+    return geocodeOnly;
+  }
+
+  public boolean isCompactOutput() {
+    return compactOutput;
+  }
+
+  public boolean isDictionaryOutput() {
+    return dictionaryOutput;
+  }
+
+  public Compression getCompression() {
+    return compression;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public String getSnapshotFilename() {
+    return snapshotFilename;
+  }
+
+  public String getDeltaDirectory() {
+    return deltaDirectory;
+  }
+
+  public boolean isWriteBack() {
+    return writeBack;
+  }
+
+  public int getWriteBackBatchSize() {
+    return writeBackBatchSize;
+  }
+
+  public String getWriteBackAddressColumn() {
+    return writeBackAddressColumn;
+  }
+
+  public String getWriteBackPlacesColumn() {
+    return writeBackPlacesColumn;
+  }
+
+  public String getGoogleApiKey() {
+    return googleApiKey;
+  }
+
+  public String getGeocodeCacheFilename() {
+    return geocodeCacheFilename;
+  }
+
+  public long getGeocodeCacheTtlDays() {
+    return geocodeCacheTtlDays;
+  }
+
+  public int getGeocodeCacheMaxEntries() {
+    return geocodeCacheMaxEntries;
+  }
+
+  public int getGeocodeMaxInFlight() {
+    return geocodeMaxInFlight;
+  }
+
+  public double getGeocodeQps() {
+    return geocodeQps;
+  }
+
+  public String getGoogleApiBaseUrl() {
+    return googleApiBaseUrl;
+  }
+
+  public boolean isPipelined() {
+    return pipelined;
+  }
+
+  public int getPipelineQueueSize() {
+    return pipelineQueueSize;
+  }
+
+  public String getMetricsFilename() {
+    return metricsFilename;
+  }
+
+  public boolean isDaemon() {
+    return daemon;
+  }
+
+  public long getRefreshMinutes() {
+    return refreshMinutes;
+  }
+
+  public String getDaemonHost() {
+    return daemonHost;
+  }
+
+  public int getDaemonPort() {
+    return daemonPort;
+  }
+}
@@ -0,0 +1,443 @@
+package org.pgp.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.metrics.Metrics;
+import org.pgp.scrape.AreaScraper;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.beans.ConstructorProperties;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Builds the scraper bean from scraper.xml without starting Spring, which costs more startup time than the rest of
+// a run's setup put together. Only the subset of Spring's XML the scraper configurations use is understood: <bean>s
+// with an id and class whose <constructor-arg>s are given by name (through @ConstructorProperties) or index, as a
+// value, <value>, <null/>, a ref to another bean or a nested bean. Anything else is left to Spring.
+public final class ScraperConfiguration {
+  private final static Logger logger = LogManager.getLogger(ScraperConfiguration.class);
+
+  private static final String BEANS_NAMESPACE = "http://www.springframework.org/schema/beans";
+  private static final String SCRAPER_BEAN = "scraper";
+
+  // URL schemes other than file: (but not Windows drive letters) are resolved by Spring
+  private static final Pattern URL_SCHEME = Pattern.compile("[a-zA-Z][a-zA-Z0-9+.\\-]+:.*");
+
+  // what value() returns for a constructor-arg that can't be passed as the parameter type asked for
+  private static final Object UNFIT = new Object();
+
+  private final Map<String, Element> beanDefinitions = new HashMap<>();
+  private final Map<String, Object> beans = new HashMap<>();
+  private final Set<String> beansInCreation = new HashSet<>();
+  // nested beans, created once however many constructors they are tried against
+  private final Map<Element, Object> innerBeans = new IdentityHashMap<>();
+
+  // thrown for configuration this doesn't handle, to fall back to Spring
+  static final class UnsupportedConfigurationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private UnsupportedConfigurationException(final String message) {
+      super(message);
+    }
+
+    private UnsupportedConfigurationException(final String message, final Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  private ScraperConfiguration() {
+  }
+
+  // Reads the "scraper" bean from a Spring XML file, only starting Spring if the file needs it. Locations are
+  // resolved as Spring's FileSystemXmlApplicationContext does: relative to the working directory even with a leading
+  // slash, or as a file: URL.
+  public static AreaScraper load(final String location) {
+    try {
+      final AreaScraper scraper = read(location);
+      logger.info("Read scraper configuration '" + location + "'.");
+
+      return scraper;
+    } catch (final UnsupportedConfigurationException e) {
+      logger.info("Scraper configuration '" + location + "' needs Spring: " + e.getMessage());
+      Metrics.counter("configuration.spring-fallbacks").increment();
+    }
+
+    return loadWithSpring(location);
+  }
+
+  public static AreaScraper loadWithSpring(final String location) {
+    return SpringConfiguration.getBean(location, SCRAPER_BEAN, AreaScraper.class);
+  }
+
+  static AreaScraper read(final String location) throws UnsupportedConfigurationException {
+    final ScraperConfiguration configuration = new ScraperConfiguration();
+    configuration.parse(resolve(location));
+
+    final Object scraper = configuration.getBean(SCRAPER_BEAN);
+    if (!(scraper instanceof AreaScraper)) {
+      throw new UnsupportedConfigurationException("bean '" + SCRAPER_BEAN + "' is not an AreaScraper");
+    }
+
+    return (AreaScraper) scraper;
+  }
+
+  private static File resolve(final String location) throws UnsupportedConfigurationException {
+    if (location.startsWith("file:")) {
+      return new File(location.substring("file:".length()));
+    }
+    if (URL_SCHEME.matcher(location).matches()) {
+      throw new UnsupportedConfigurationException("not a file location");
+    }
+
+    int start = 0;
+    while (start < location.length() && location.charAt(start) == '/') {
+      start++;
+    }
+
+    return new File(location.substring(start));
+  }
+
+  private void parse(final File file) throws UnsupportedConfigurationException {
+    final Document document;
+    try {
+      final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      factory.setIgnoringComments(true);
+      // DTD based configurations are Spring's business, and no external entities are ever fetched
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+
+      final DocumentBuilder builder = factory.newDocumentBuilder();
+      document = builder.parse(file);
+    } catch (final ParserConfigurationException | SAXException | IOException | IllegalArgumentException e) {
+      throw new UnsupportedConfigurationException(e.getMessage(), e);
+    }
+
+    final Element root = document.getDocumentElement();
+    requireBeansElement(root, "beans");
+    requireAttributes(root);
+
+    for (final Element element : children(root)) {
+      requireBeansElement(element, "bean");
+      requireAttributes(element, "id", "class");
+
+      final String id = element.getAttribute("id");
+      if (id.isEmpty() || beanDefinitions.put(id, element) != null) {
+        throw new UnsupportedConfigurationException("bean without a unique id");
+      }
+    }
+  }
+
+  private Object getBean(final String id) throws UnsupportedConfigurationException {
+    final Object bean = beans.get(id);
+    if (bean != null) {
+      return bean;
+    }
+
+    final Element definition = beanDefinitions.get(id);
+    if (definition == null) {
+      throw new UnsupportedConfigurationException("no bean '" + id + "'");
+    }
+    if (!beansInCreation.add(id)) {
+      throw new UnsupportedConfigurationException("bean '" + id + "' refers back to itself");
+    }
+
+    final Object created = create(definition);
+    beansInCreation.remove(id);
+    beans.put(id, created);
+
+    return created;
+  }
+
+  private static final class Argument {
+    private final String name;
+    private final int index;
+    private final Element element;
+
+    private Argument(final String name, final int index, final Element element) {
+      this.name = name;
+      this.index = index;
+      this.element = element;
+    }
+  }
+
+  private Object create(final Element definition) throws UnsupportedConfigurationException {
+    final String className = definition.getAttribute("class");
+
+    final Class<?> beanClass;
+    try {
+      beanClass = Class.forName(className);
+    } catch (final ClassNotFoundException | LinkageError e) {
+      throw new UnsupportedConfigurationException("class " + className + " not found", e);
+    }
+
+    if (Modifier.isAbstract(beanClass.getModifiers())) {
+      throw new UnsupportedConfigurationException("class " + className + " is abstract");
+    }
+
+    final List<Argument> arguments = new ArrayList<>();
+    for (final Element element : children(definition)) {
+      requireBeansElement(element, "constructor-arg");
+      requireAttributes(element, "name", "index", "value", "ref");
+
+      final String name = element.getAttribute("name");
+      final String index = element.getAttribute("index");
+
+      if (name.isEmpty() == index.isEmpty()) {
+        throw new UnsupportedConfigurationException("constructor-arg matched by type");
+      }
+
+      try {
+        arguments.add(new Argument(name.isEmpty()
+            ? null
+            : name, index.isEmpty()
+            ? -1
+            : Integer.parseInt(index), element));
+      } catch (final NumberFormatException e) {
+        throw new UnsupportedConfigurationException("constructor-arg index '" + index + "'", e);
+      }
+    }
+
+    // as with Spring, a constructor can only be chosen if all of its parameters are given, and only one may fit
+    Constructor<?> match = null;
+    Object[] matchValues = null;
+
+    for (final Constructor<?> constructor : beanClass.getConstructors()) {
+      final Object[] values = bind(constructor, arguments);
+
+      if (values != null) {
+        if (match != null) {
+          throw new UnsupportedConfigurationException("more than one constructor of " + className + " fits");
+        }
+        match = constructor;
+        matchValues = values;
+      }
+    }
+
+    if (match == null) {
+      throw new UnsupportedConfigurationException("no constructor of " + className + " fits");
+    }
+
+    try {
+      return match.newInstance(matchValues);
+    } catch (final InvocationTargetException e) {
+      throw new IllegalStateException("Creating a " + className + " failed", e.getCause());
+    } catch (final ReflectiveOperationException e) {
+      throw new UnsupportedConfigurationException("creating a " + className + " failed", e);
+    }
+  }
+
+  // the constructor's parameter values for the arguments, or null if they don't fit it
+  private Object[] bind(final Constructor<?> constructor, final List<Argument> arguments)
+      throws UnsupportedConfigurationException {
+    final Class<?>[] types = constructor.getParameterTypes();
+    if (types.length != arguments.size()) {
+      return null;
+    }
+
+    final ConstructorProperties properties = constructor.getAnnotation(ConstructorProperties.class);
+    final List<String> names = properties != null
+        ? Arrays.asList(properties.value())
+        : Collections.emptyList();
+
+    final Object[] values = new Object[types.length];
+    final boolean[] bound = new boolean[types.length];
+
+    for (final Argument argument : arguments) {
+      final int position = argument.name != null
+          ? names.indexOf(argument.name)
+          : argument.index;
+
+      if (position < 0 || position >= types.length || bound[position]) {
+        return null;
+      }
+
+      final Object value = value(argument.element, types[position]);
+      if (value == UNFIT) {
+        return null;
+      }
+
+      values[position] = value;
+      bound[position] = true;
+    }
+
+    return values;
+  }
+
+  // the argument's value as the given type, or UNFIT if it can't be one
+  private Object value(final Element argument, final Class<?> type)
+      throws UnsupportedConfigurationException {
+    final List<Element> children = children(argument);
+    final boolean hasValue = argument.hasAttribute("value");
+    final boolean hasRef = argument.hasAttribute("ref");
+
+    if ((hasValue ? 1 : 0) + (hasRef ? 1 : 0) + children.size() != 1) {
+      throw new UnsupportedConfigurationException("constructor-arg without exactly one value");
+    }
+
+    if (hasValue) {
+      return convert(argument.getAttribute("value"), type);
+    }
+    if (hasRef) {
+      return reference(getBean(argument.getAttribute("ref")), type);
+    }
+
+    final Element child = children.get(0);
+    requireBeansElement(child, child.getLocalName());
+
+    switch (child.getLocalName()) {
+      case "value": {
+        requireAttributes(child);
+        return convert(child.getTextContent(), type);
+      }
+      case "null": {
+        requireAttributes(child);
+        return type.isPrimitive()
+            ? UNFIT
+            : null;
+      }
+      case "ref": {
+        requireAttributes(child, "bean");
+        return reference(getBean(child.getAttribute("bean")), type);
+      }
+      case "bean": {
+        requireAttributes(child, "id", "class");
+
+        Object bean = innerBeans.get(child);
+        if (bean == null) {
+          bean = create(child);
+          innerBeans.put(child, bean);
+        }
+
+        return reference(bean, type);
+      }
+      default: {
+        throw new UnsupportedConfigurationException("<" + child.getTagName() + "> constructor-arg");
+      }
+    }
+  }
+
+  private static Object reference(final Object bean, final Class<?> type) {
+    return type.isInstance(bean)
+        ? bean
+        : UNFIT;
+  }
+
+  // the conversions Spring's default property editors make for the parameter types in use, UNFIT for any other
+  // type or a value that doesn't parse
+  private static Object convert(final String value, final Class<?> type) {
+    try {
+      if (type == String.class || type == Object.class) {
+        return value;
+      }
+      if (type == int.class || type == Integer.class) {
+        return Integer.decode(value.trim());
+      }
+      if (type == long.class || type == Long.class) {
+        return Long.decode(value.trim());
+      }
+      if (type == double.class || type == Double.class) {
+        return Double.valueOf(value.trim());
+      }
+      if (type == float.class || type == Float.class) {
+        return Float.valueOf(value.trim());
+      }
+      if (type == short.class || type == Short.class) {
+        return Short.decode(value.trim());
+      }
+      if (type == byte.class || type == Byte.class) {
+        return Byte.decode(value.trim());
+      }
+      if (type == boolean.class || type == Boolean.class) {
+        final String trimmed = value.trim();
+        return "true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)
+            ? Boolean.valueOf(trimmed)
+            : UNFIT;
+      }
+      if (type == BigDecimal.class) {
+        return new BigDecimal(value.trim());
+      }
+      if (type == BigInteger.class) {
+        return new BigInteger(value.trim());
+      }
+    } catch (final NumberFormatException e) {
+      return UNFIT;
+    }
+
+    return UNFIT;
+  }
+
+  private static List<Element> children(final Element parent) throws UnsupportedConfigurationException {
+    final List<Element> children = new ArrayList<>();
+
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+      switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE: {
+          children.add((Element) node);
+          break;
+        }
+        case Node.TEXT_NODE: {
+          if (!node.getTextContent().trim().isEmpty() && !parent.getLocalName().equals("value")) {
+            throw new UnsupportedConfigurationException("text in <" + parent.getTagName() + ">");
+          }
+          break;
+        }
+        case Node.COMMENT_NODE: {
+          break;
+        }
+        default: {
+          throw new UnsupportedConfigurationException("<" + parent.getTagName() + "> content");
+        }
+      }
+    }
+
+    return children;
+  }
+
+  private static void requireBeansElement(final Element element, final String localName)
+      throws UnsupportedConfigurationException {
+    if (!BEANS_NAMESPACE.equals(element.getNamespaceURI()) || !localName.equals(element.getLocalName())) {
+      throw new UnsupportedConfigurationException("<" + element.getTagName() + "> element");
+    }
+  }
+
+  // namespace declarations and the schema location are allowed on any element
+  private static void requireAttributes(final Element element, final String... allowed)
+      throws UnsupportedConfigurationException {
+    final List<String> allowedNames = Arrays.asList(allowed);
+    final NamedNodeMap attributes = element.getAttributes();
+
+    for (int i = 0; i < attributes.getLength(); i++) {
+      final Attr attribute = (Attr) attributes.item(i);
+      final String namespace = attribute.getNamespaceURI();
+
+      if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespace) ||
+          (XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(namespace) &&
+              "schemaLocation".equals(attribute.getLocalName()))) {
+        continue;
+      }
+
+      if (namespace != null || !allowedNames.contains(attribute.getLocalName())) {
+        throw new UnsupportedConfigurationException("attribute " + attribute.getName() + " on <" +
+            element.getTagName() + ">");
+      }
+    }
+  }
+}
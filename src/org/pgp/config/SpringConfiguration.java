@@ -0,0 +1,15 @@
+package org.pgp.config;
+
+import org.springframework.context.support.FileSystemXmlApplicationContext;
+
+// Kept apart from ScraperConfiguration so Spring's classes are only loaded when a configuration needs them.
+final class SpringConfiguration {
+  private SpringConfiguration() {
+  }
+
+  static <T> T getBean(final String location, final String name, final Class<T> type) {
+    try (final FileSystemXmlApplicationContext context = new FileSystemXmlApplicationContext(location)) {
+      return context.getBean(name, type);
+    }
+  }
+}
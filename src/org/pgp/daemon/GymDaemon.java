@@ -0,0 +1,143 @@
+package org.pgp.daemon;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.GymScraper;
+import org.pgp.ScrapeOptions;
+import org.pgp.geocode.GeocodeCache;
+import org.pgp.metrics.Metrics;
+import org.pgp.metrics.Stage;
+import org.pgp.object.Gym;
+import org.pgp.scrape.AreaScraper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Keeps the scraper, geocode cache and gym set resident between runs, re-scraping the configured areas on a fixed
+// delay and answering gym queries from whichever snapshot was last completed.
+public final class GymDaemon {
+  private final static Logger logger = LogManager.getLogger(GymDaemon.class);
+
+  private static final int QUERY_THREADS = 4;
+
+  private final ScrapeOptions options;
+
+  private final AtomicReference<GymSnapshot> snapshot = new AtomicReference<>();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+      new Thread(runnable, "gym-refresh"));
+
+  private AreaScraper scraper;
+  private GeocodeCache geocodeCache;
+  private GymQueryServer server;
+
+  // written by the refresh thread only, read for /status
+  private volatile long refreshes;
+  private volatile long failedRefreshes;
+  private volatile long lastRefreshMillis;
+  private volatile String lastError;
+
+  public GymDaemon(final ScrapeOptions options) {
+    this.options = options;
+  }
+
+  public void start() throws IOException {
+    // queries are answered from the existing gyms, if any, until the first refresh completes
+    snapshot.set(new GymSnapshot(GymScraper.loadExistingGyms(options), 0L, System.currentTimeMillis()));
+
+    scraper = GymScraper.from(options.getScraperConfiguration());
+    geocodeCache = GymScraper.openGeocodeCache(options);
+
+    server = new GymQueryServer(new InetSocketAddress(options.getDaemonHost(), options.getDaemonPort()),
+        QUERY_THREADS, snapshot::get, this::status);
+    server.start();
+
+    Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "gym-daemon-shutdown"));
+
+    logger.info("Refreshing " + options.getCoordinateRanges().size() + " area(s) every " +
+        options.getRefreshMinutes() + " minutes.");
+    scheduler.scheduleWithFixedDelay(this::refresh, 0L, options.getRefreshMinutes(), TimeUnit.MINUTES);
+  }
+
+  public GymSnapshot getSnapshot() {
+    return snapshot.get();
+  }
+
+  public void stop() {
+    logger.info("Stopping gym daemon.");
+    server.stop();
+    scheduler.shutdown();
+
+    try {
+      // let a refresh in progress write out and commit what it scraped
+      if (!scheduler.awaitTermination(1L, TimeUnit.MINUTES)) {
+        scheduler.shutdownNow();
+      }
+    } catch (final InterruptedException e) {
+      scheduler.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void refresh() {
+    final long start = System.nanoTime();
+    final GymSnapshot current = snapshot.get();
+
+    try (final Stage stage = Metrics.stage("refresh")) {
+      // after the first refresh the previous snapshot stands in for the existing gyms file; merging and geocoding
+      // update gyms in place, so they get copies while queries go on reading the snapshot's
+      final Set<Gym> existingGyms = new TreeSet<>();
+      current.getGyms().forEach(gym -> existingGyms.add(new Gym(gym)));
+
+      final List<GymScraper.Result> results = GymScraper.scrape(options, scraper, existingGyms,
+          options.isIncrementalUpdate() || refreshes > 0L, geocodeCache);
+      final Set<Gym> gyms = results.get(results.size() - 1).getGyms();
+
+      GymScraper.write(results, options);
+      GymScraper.writeBack(results, scraper, options);
+      for (final GymScraper.Result result : results) {
+        result.commit();
+      }
+
+      snapshot.set(new GymSnapshot(gyms, current.getSequence() + 1L, System.currentTimeMillis()));
+      stage.setItems(gyms.size());
+
+      refreshes++;
+      lastError = null;
+      logger.info("Refresh " + refreshes + " complete, serving " + gyms.size() + " gyms.");
+    } catch (final Exception e) {
+      // keep serving the previous snapshot and try again at the next refresh
+      failedRefreshes++;
+      lastError = e.toString();
+      logger.error("Exception caught refreshing gyms, keeping snapshot " + current.getSequence(), e);
+    } finally {
+      lastRefreshMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    if (options.getMetricsFilename() != null) {
+      try {
+        Metrics.writeSummary(Paths.get(options.getMetricsFilename()));
+      } catch (final IOException e) {
+        logger.error("Exception caught writing metrics", e);
+      }
+    }
+  }
+
+  private Map<String, Object> status() {
+    final Map<String, Object> status = new LinkedHashMap<>();
+    status.put("refreshes", refreshes);
+    status.put("failedRefreshes", failedRefreshes);
+    status.put("lastRefreshMillis", lastRefreshMillis);
+    status.put("refreshMinutes", options.getRefreshMinutes());
+    if (lastError != null) {
+      status.put("lastError", lastError);
+    }
+
+    return status;
+  }
+}
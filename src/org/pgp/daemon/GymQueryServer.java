@@ -0,0 +1,230 @@
+package org.pgp.daemon;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.geocode.GymIndex;
+import org.pgp.metrics.Metrics;
+import org.pgp.object.Gym;
+import org.pgp.object.GymStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+// Local json API over the current gym snapshot:
+//   GET /nearest?lat=&lng=[&k=]                    the k (default 1) gyms closest to a point
+//   GET /bbox?minLat=&maxLat=&minLong=&maxLong=    all gyms within a bounding box
+//   GET /status                                    size and age of the snapshot being served
+public final class GymQueryServer {
+  private final static Logger logger = LogManager.getLogger(GymQueryServer.class);
+
+  private static final int MAX_NEAREST = 100;
+
+  private final Supplier<GymSnapshot> snapshot;
+  private final Supplier<Map<String, Object>> status;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Gson gson = new Gson();
+
+  private static final class BadRequestException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private BadRequestException(final String message) {
+      super(message);
+    }
+  }
+
+  private interface Query {
+    Object answer(GymSnapshot snapshot, Map<String, String> parameters) throws BadRequestException;
+  }
+
+  // status supplies any further entries for /status, e.g. the state of the refresh loop
+  public GymQueryServer(final InetSocketAddress address, final int threads, final Supplier<GymSnapshot> snapshot,
+                        final Supplier<Map<String, Object>> status) throws IOException {
+    this.snapshot = snapshot;
+    this.status = status;
+
+    server = HttpServer.create(address, 0);
+    executor = Executors.newFixedThreadPool(threads, runnable -> {
+      final Thread thread = new Thread(runnable, "gym-query");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+
+    server.createContext("/nearest", handler("nearest", this::nearest));
+    server.createContext("/bbox", handler("bbox", this::boundingBox));
+    server.createContext("/status", handler("status", this::status));
+  }
+
+  public void start() {
+    server.start();
+    logger.info("Serving gym queries on http://" + server.getAddress().getHostString() + ":" +
+        server.getAddress().getPort() + "/.");
+  }
+
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  public void stop() {
+    server.stop(1);
+    executor.shutdownNow();
+  }
+
+  private HttpHandler handler(final String name, final Query query) {
+    return exchange -> {
+      final long start = System.nanoTime();
+
+      try {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+          respond(exchange, 405, Collections.singletonMap("error", "Only GET is supported."));
+          return;
+        }
+
+        respond(exchange, 200, query.answer(snapshot.get(), parameters(exchange)));
+      } catch (final BadRequestException e) {
+        respond(exchange, 400, Collections.singletonMap("error", e.getMessage()));
+      } catch (final RuntimeException e) {
+        logger.error("Exception caught answering " + exchange.getRequestURI(), e);
+        respond(exchange, 500, Collections.singletonMap("error", "Internal error."));
+      } finally {
+        exchange.close();
+        Metrics.timer("query." + name).recordSince(start);
+      }
+    };
+  }
+
+  private Object nearest(final GymSnapshot snapshot, final Map<String, String> parameters)
+      throws BadRequestException {
+    final double latitude = coordinate(parameters, "lat", 90d);
+    final double longitude = coordinate(parameters, "lng", 180d);
+
+    final int k = parameters.containsKey("k")
+        ? integer(parameters, "k")
+        : 1;
+    if (k < 1 || k > MAX_NEAREST) {
+      throw new BadRequestException("k must be between 1 and " + MAX_NEAREST + ".");
+    }
+
+    final GymStore store = snapshot.getIndex().getStore();
+    final List<Map<String, Object>> gyms = new ArrayList<>(k);
+
+    for (final GymIndex.Neighbor neighbor : snapshot.getIndex().nearest(latitude, longitude, k, null)) {
+      final Map<String, Object> gym = new LinkedHashMap<>();
+      gym.put("gymId", neighbor.getGymId());
+      gym.put("gymName", store.getGymName(neighbor.getIndex()));
+      gym.put("latitude", store.getLatitude(neighbor.getIndex()));
+      gym.put("longitude", store.getLongitude(neighbor.getIndex()));
+      gym.put("distanceMeters", neighbor.getDistance() * 1_000d);
+      gyms.add(gym);
+    }
+
+    return gyms;
+  }
+
+  private Object boundingBox(final GymSnapshot snapshot, final Map<String, String> parameters)
+      throws BadRequestException {
+    final double minLatitude = coordinate(parameters, "minLat", 90d);
+    final double maxLatitude = coordinate(parameters, "maxLat", 90d);
+    final double minLongitude = coordinate(parameters, "minLong", 180d);
+    final double maxLongitude = coordinate(parameters, "maxLong", 180d);
+
+    if (minLatitude > maxLatitude || minLongitude > maxLongitude) {
+      throw new BadRequestException("Minimum bounds must not exceed maximum bounds.");
+    }
+
+    final int[] indices = snapshot.getIndex().within(minLatitude, maxLatitude, minLongitude, maxLongitude);
+
+    // stable output regardless of the tree's layout
+    Arrays.sort(indices);
+
+    final List<Gym> gyms = new ArrayList<>(indices.length);
+    for (final int index : indices) {
+      gyms.add(snapshot.getGym(index));
+    }
+
+    return gyms;
+  }
+
+  private Object status(final GymSnapshot snapshot, final Map<String, String> parameters) {
+    final Map<String, Object> status = new LinkedHashMap<>();
+    status.put("gyms", snapshot.size());
+    status.put("sequence", snapshot.getSequence());
+    status.put("refreshedAt", Instant.ofEpochMilli(snapshot.getRefreshedAt()).toString());
+    status.putAll(this.status.get());
+
+    return status;
+  }
+
+  private void respond(final HttpExchange exchange, final int status, final Object body) throws IOException {
+    final byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+
+    try (final OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(bytes);
+    }
+  }
+
+  private static Map<String, String> parameters(final HttpExchange exchange) {
+    final Map<String, String> parameters = new HashMap<>();
+    final String query = exchange.getRequestURI().getRawQuery();
+
+    if (query == null) {
+      return parameters;
+    }
+
+    for (final String parameter : query.split("&")) {
+      final int separator = parameter.indexOf('=');
+      if (separator > 0) {
+        parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+            URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+      }
+    }
+
+    return parameters;
+  }
+
+  private static double coordinate(final Map<String, String> parameters, final String name, final double limit)
+      throws BadRequestException {
+    final String value = parameters.get(name);
+    if (value == null) {
+      throw new BadRequestException("Parameter '" + name + "' is required.");
+    }
+
+    final double coordinate;
+    try {
+      coordinate = Double.parseDouble(value);
+    } catch (final NumberFormatException e) {
+      throw new BadRequestException("Parameter '" + name + "' is not a number.");
+    }
+
+    if (!(Math.abs(coordinate) <= limit)) {
+      throw new BadRequestException("Parameter '" + name + "' must be between -" + limit + " and " + limit + ".");
+    }
+
+    return coordinate;
+  }
+
+  private static int integer(final Map<String, String> parameters, final String name) throws BadRequestException {
+    try {
+      return Integer.parseInt(parameters.get(name));
+    } catch (final NumberFormatException e) {
+      throw new BadRequestException("Parameter '" + name + "' is not an integer.");
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.pgp.daemon;
+
+import org.pgp.geocode.GymIndex;
+import org.pgp.object.Gym;
+import org.pgp.object.GymStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable view of one refresh's gyms with a spatial index over them; replaced as a whole when the next refresh
+// completes, so a query always sees a single consistent gym set.
+public final class GymSnapshot {
+  // in the order of the index's store positions
+  private final List<Gym> gyms;
+  private final GymIndex index;
+
+  private final long sequence;
+  private final long refreshedAt;
+
+  public GymSnapshot(final Collection<Gym> gyms, final long sequence, final long refreshedAt) {
+    this.gyms = Collections.unmodifiableList(new ArrayList<>(gyms));
+    this.index = new GymIndex(new GymStore(this.gyms));
+    this.sequence = sequence;
+    this.refreshedAt = refreshedAt;
+  }
+
+  public List<Gym> getGyms() {
+    return gyms;
+  }
+
+  public Gym getGym(final int index) {
+    return gyms.get(index);
+  }
+
+  public GymIndex getIndex() {
+    return index;
+  }
+
+  public int size() {
+    return gyms.size();
+  }
+
+  // number of refreshes completed before this snapshot was taken, 0 for the gyms loaded at start up
+  public long getSequence() {
+    return sequence;
+  }
+
+  // epoch milliseconds
+  public long getRefreshedAt() {
+    return refreshedAt;
+  }
+}
@@ -0,0 +1,92 @@
+package org.pgp.geocode;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.maps.GeoApiContext;
+import com.google.maps.OkHttpRequestHandler;
+import com.google.maps.PendingResult;
+import com.google.maps.internal.ApiResponse;
+import com.google.maps.internal.ExceptionsAllowedToRetry;
+
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+
+// Sends every Maps API request to a fixed base url (e.g. a local stub server) instead of the Google hosts.
+public final class BaseUrlRequestHandler implements GeoApiContext.RequestHandler {
+  private final String baseUrl;
+  private final GeoApiContext.RequestHandler delegate;
+
+  private BaseUrlRequestHandler(final String baseUrl, final GeoApiContext.RequestHandler delegate) {
+    this.baseUrl = baseUrl;
+    this.delegate = delegate;
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handle(final String hostName, final String url,
+                                                               final String userAgent, final Class<R> clazz,
+                                                               final FieldNamingPolicy fieldNamingPolicy,
+                                                               final long errorTimeout, final Integer maxRetries,
+                                                               final ExceptionsAllowedToRetry exceptionsAllowedToRetry) {
+    return delegate.handle(baseUrl, url, userAgent, clazz, fieldNamingPolicy, errorTimeout, maxRetries,
+        exceptionsAllowedToRetry);
+  }
+
+  @Override
+  public <T, R extends ApiResponse<T>> PendingResult<T> handlePost(final String hostName, final String url,
+                                                                   final String payload, final String userAgent,
+                                                                   final Class<R> clazz,
+                                                                   final FieldNamingPolicy fieldNamingPolicy,
+                                                                   final long errorTimeout, final Integer maxRetries,
+                                                                   final ExceptionsAllowedToRetry exceptionsAllowedToRetry) {
+    return delegate.handlePost(baseUrl, url, payload, userAgent, clazz, fieldNamingPolicy, errorTimeout, maxRetries,
+        exceptionsAllowedToRetry);
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  public static final class Builder implements GeoApiContext.RequestHandler.Builder {
+    private final String baseUrl;
+    private final OkHttpRequestHandler.Builder delegate = new OkHttpRequestHandler.Builder();
+
+    public Builder(final String baseUrl) {
+      this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public void connectTimeout(final long timeout, final TimeUnit unit) {
+      delegate.connectTimeout(timeout, unit);
+    }
+
+    @Override
+    public void readTimeout(final long timeout, final TimeUnit unit) {
+      delegate.readTimeout(timeout, unit);
+    }
+
+    @Override
+    public void writeTimeout(final long timeout, final TimeUnit unit) {
+      delegate.writeTimeout(timeout, unit);
+    }
+
+    @Override
+    public void queriesPerSecond(final int maxQps) {
+      delegate.queriesPerSecond(maxQps);
+    }
+
+    @Override
+    public void proxy(final Proxy proxy) {
+      delegate.proxy(proxy);
+    }
+
+    @Override
+    public void proxyAuthentication(final String proxyUserName, final String proxyUserPassword) {
+      delegate.proxyAuthentication(proxyUserName, proxyUserPassword);
+    }
+
+    @Override
+    public GeoApiContext.RequestHandler build() {
+      return new BaseUrlRequestHandler(baseUrl, delegate.build());
+    }
+  }
+}
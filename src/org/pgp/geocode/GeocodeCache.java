@@ -0,0 +1,204 @@
+package org.pgp.geocode;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.maps.model.LatLng;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.metrics.Metrics;
+import org.pgp.object.Geocode;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Reverse geocode and nearby places results keyed by quantized location (and search radius for places),
+// persisted as json between runs and evicted by age and least recent use.
+public final class GeocodeCache {
+  private static final Logger logger = LogManager.getLogger(GeocodeCache.class);
+
+  // micro-degrees, ~11cm at the equator
+  private static final double QUANTIZATION = 1_000_000d;
+
+  private static final Type ENTRIES_TYPE = new TypeToken<Map<String, CachedResult>>() {
+  }.getType();
+
+  private static final class CachedResult {
+    private long created;
+    private Collection<Geocode> geocodes;
+    private Collection<String> places;
+
+    // whether this entry came from disk rather than being filled in during this run
+    private transient boolean loaded;
+
+    private CachedResult() {
+    }
+
+    private CachedResult(final long created, final Collection<Geocode> geocodes, final Collection<String> places) {
+      this.created = created;
+      this.geocodes = geocodes;
+      this.places = places;
+    }
+  }
+
+  private static final class Statistics {
+    private int warmHits;
+    private int coldHits;
+    private int misses;
+
+    @Override
+    public String toString() {
+      final int lookups = warmHits + coldHits + misses;
+
+      return lookups + " lookups, " + warmHits + " warm hits, " + coldHits + " cold hits, " + misses + " misses (" +
+          (lookups > 0
+              ? Math.round(100d * (warmHits + coldHits) / lookups)
+              : 0) + "% hit rate)";
+    }
+  }
+
+  private final Path file;
+  private final long timeToLive;
+  private final int maxEntries;
+
+  private final Map<String, CachedResult> entries;
+
+  private final Statistics geocodeStatistics = new Statistics();
+  private final Statistics placesStatistics = new Statistics();
+
+  private int loadedEntries;
+  private int expiredEntries;
+
+  public GeocodeCache(final Path file, final long timeToLive, final TimeUnit timeUnit, final int maxEntries) {
+    this.file = file;
+    this.timeToLive = timeUnit.toMillis(timeToLive);
+    this.maxEntries = maxEntries;
+
+    entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, CachedResult> eldest) {
+        return size() > GeocodeCache.this.maxEntries;
+      }
+    };
+  }
+
+  public synchronized void load() throws IOException {
+    if (!Files.exists(file)) {
+      logger.info("Geocode cache '" + file + "' does not exist yet, starting cold.");
+      return;
+    }
+
+    final Map<String, CachedResult> storedEntries;
+    try (final Reader input = Files.newBufferedReader(file)) {
+      storedEntries = new Gson().fromJson(input, ENTRIES_TYPE);
+    }
+
+    if (storedEntries == null) {
+      return;
+    }
+
+    // stored least recently used first, so insertion here recreates the access order
+    final long now = System.currentTimeMillis();
+    storedEntries.forEach((key, entry) -> {
+      if (isExpired(entry, now)) {
+        expiredEntries++;
+      } else {
+        entry.loaded = true;
+        entries.put(key, entry);
+        loadedEntries++;
+      }
+    });
+
+    logger.info("Loaded " + loadedEntries + " geocode cache entries, " + expiredEntries + " expired.");
+  }
+
+  public synchronized void save() throws IOException {
+    final Path parent = file.toAbsolutePath().getParent();
+    final Path temporaryFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+    try (final Writer writer = Files.newBufferedWriter(temporaryFile)) {
+      new Gson().toJson(entries, ENTRIES_TYPE, writer);
+    }
+
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    logger.info("Saved " + entries.size() + " geocode cache entries.");
+  }
+
+  public synchronized Collection<Geocode> getGeocodes(final LatLng location) {
+    final CachedResult entry = lookup(geocodeKey(location), geocodeStatistics);
+
+    return entry != null
+        ? new LinkedHashSet<>(entry.geocodes)
+        : null;
+  }
+
+  public synchronized void putGeocodes(final LatLng location, final Collection<Geocode> geocodes) {
+    entries.put(geocodeKey(location), new CachedResult(System.currentTimeMillis(), new ArrayList<>(geocodes), null));
+  }
+
+  public synchronized Collection<String> getPlaces(final LatLng location, final int radius) {
+    final CachedResult entry = lookup(placesKey(location, radius), placesStatistics);
+
+    return entry != null
+        ? new TreeSet<>(entry.places)
+        : null;
+  }
+
+  public synchronized void putPlaces(final LatLng location, final int radius, final Collection<String> places) {
+    entries.put(placesKey(location, radius), new CachedResult(System.currentTimeMillis(), null, new ArrayList<>(places)));
+  }
+
+  public synchronized void logStatistics() {
+    logger.info("Geocode cache: " + entries.size() + " entries (" + loadedEntries + " loaded warm, " +
+        expiredEntries + " expired on load).");
+    logger.info("  Reverse geocode: " + geocodeStatistics + ".");
+    logger.info("  Nearby places: " + placesStatistics + ".");
+  }
+
+  private CachedResult lookup(final String key, final Statistics statistics) {
+    final CachedResult entry = entries.get(key);
+
+    if (entry == null) {
+      statistics.misses++;
+      Metrics.counter("geocode-cache.misses").increment();
+      return null;
+    }
+
+    if (isExpired(entry, System.currentTimeMillis())) {
+      entries.remove(key);
+      statistics.misses++;
+      Metrics.counter("geocode-cache.misses").increment();
+      return null;
+    }
+
+    Metrics.counter("geocode-cache.hits").increment();
+    if (entry.loaded) {
+      statistics.warmHits++;
+    } else {
+      statistics.coldHits++;
+    }
+
+    return entry;
+  }
+
+  private boolean isExpired(final CachedResult entry, final long now) {
+    return now - entry.created > timeToLive;
+  }
+
+  private static String geocodeKey(final LatLng location) {
+    return "geocode:" + quantize(location);
+  }
+
+  private static String placesKey(final LatLng location, final int radius) {
+    return "places:" + quantize(location) + ":" + radius;
+  }
+
+  private static String quantize(final LatLng location) {
+    return Math.round(location.lat * QUANTIZATION) + "," + Math.round(location.lng * QUANTIZATION);
+  }
+}
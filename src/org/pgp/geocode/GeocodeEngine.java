@@ -0,0 +1,165 @@
+package org.pgp.geocode;
+
+import com.google.maps.GeoApiContext;
+import com.google.maps.GeocodingApi;
+import com.google.maps.NearbySearchRequest;
+import com.google.maps.PendingResult;
+import com.google.maps.model.GeocodingResult;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.PlaceType;
+import com.google.maps.model.PlacesSearchResponse;
+import org.pgp.metrics.ApiRequest;
+import org.pgp.metrics.Metrics;
+import org.pgp.object.Geocode;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Issues reverse geocode and nearby places requests asynchronously, bounding the number of requests in flight
+// and the rate at which they are sent. Submitting blocks while the window is full, so callers are throttled
+// to the pace the API is actually answering at.
+public final class GeocodeEngine {
+  private static final Set<String> PLACE_TYPES = Arrays.stream(PlaceType.values())
+      .map(PlaceType::toString)
+      .map(String::toUpperCase)
+      .collect(Collectors.toSet());
+
+  private final GeoApiContext context;
+  private final GeocodeCache cache;
+
+  private final Semaphore inFlight;
+  private final long requestInterval;
+
+  private long nextRequestTime;
+
+  public GeocodeEngine(final GeoApiContext context, final GeocodeCache cache, final int maxInFlight,
+                       final double queriesPerSecond) {
+    this.context = context;
+    this.cache = cache;
+
+    inFlight = new Semaphore(maxInFlight);
+    requestInterval = queriesPerSecond > 0d
+        ? Math.round(TimeUnit.SECONDS.toNanos(1L) / queriesPerSecond)
+        : 0L;
+    nextRequestTime = System.nanoTime();
+  }
+
+  public CompletableFuture<Collection<Geocode>> reverseGeocode(final LatLng location) {
+    if (cache != null) {
+      final Collection<Geocode> geocodes = cache.getGeocodes(location);
+      if (geocodes != null) {
+        return CompletableFuture.completedFuture(geocodes);
+      }
+    }
+
+    return this.<GeocodingResult[]>send("reverse-geocode", () -> GeocodingApi.newRequest(context).latlng(location))
+        .thenApply(results -> {
+          final Collection<Geocode> geocodes = Arrays.stream(results)
+              .map(result -> new Geocode(result.formattedAddress, result.addressComponents))
+              .collect(Collectors.toCollection(LinkedHashSet::new));
+
+          if (cache != null) {
+            cache.putGeocodes(location, geocodes);
+          }
+
+          return geocodes;
+        });
+  }
+
+  public CompletableFuture<Collection<String>> nearbyPlaces(final LatLng location, final int radius) {
+    if (cache != null) {
+      final Collection<String> places = cache.getPlaces(location, radius);
+      if (places != null) {
+        return CompletableFuture.completedFuture(places);
+      }
+    }
+
+    return this.<PlacesSearchResponse>send("nearby-search", () -> new NearbySearchRequest(context).location(location).radius(radius))
+        .thenApply(response -> {
+          final Collection<String> places = Arrays.stream(response.results)
+              .filter(place -> Arrays.stream(place.types)
+                  .map(String::toUpperCase)
+                  .anyMatch(PLACE_TYPES::contains))
+              .map(place -> place.name)
+              .collect(Collectors.toCollection(TreeSet::new));
+
+          if (cache != null) {
+            cache.putPlaces(location, radius, places);
+          }
+
+          return places;
+        });
+  }
+
+  private interface RequestFactory<T> {
+    PendingResult<T> create();
+  }
+
+  private <T> CompletableFuture<T> send(final String endpoint, final RequestFactory<T> requestFactory) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    final long submitted = System.nanoTime();
+
+    try {
+      inFlight.acquire();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    try {
+      pace();
+      Metrics.timer("geocode.submit-wait").recordSince(submitted);
+
+      final ApiRequest request = Metrics.apiRequest(endpoint);
+      requestFactory.create().setCallback(new PendingResult.Callback<T>() {
+        @Override
+        public void onResult(final T result) {
+          request.succeeded();
+          inFlight.release();
+          future.complete(result);
+        }
+
+        @Override
+        public void onFailure(final Throwable e) {
+          request.failed();
+          inFlight.release();
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (final InterruptedException | RuntimeException e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      inFlight.release();
+      future.completeExceptionally(e);
+    }
+
+    return future;
+  }
+
+  // waits for the next free slot under the queries per second ceiling
+  private void pace() throws InterruptedException {
+    if (requestInterval == 0L) {
+      return;
+    }
+
+    final long delay;
+    synchronized (this) {
+      final long now = System.nanoTime();
+
+      if (nextRequestTime - now < 0L) {
+        nextRequestTime = now;
+      }
+      delay = nextRequestTime - now;
+      nextRequestTime += requestInterval;
+    }
+
+    if (delay > 0L) {
+      TimeUnit.NANOSECONDS.sleep(delay);
+    }
+  }
+}
@@ -1,25 +1,34 @@
 package org.pgp.geocode;
 
 import com.google.maps.GeoApiContext;
-import com.google.maps.GeocodingApi;
-import com.google.maps.NearbySearchRequest;
-import com.google.maps.errors.ApiException;
 import com.google.maps.model.LatLng;
-import com.google.maps.model.PlaceType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.pgp.object.Geocode;
+import org.pgp.metrics.Metrics;
+import org.pgp.metrics.Stage;
+import org.pgp.object.GeocodePool;
 import org.pgp.object.Gym;
 import org.pgp.object.GymInfo;
+import org.pgp.object.GymStore;
 
-import java.io.IOException;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class GeocodeGyms {
   private final static Logger logger = LogManager.getLogger(GeocodeGyms.class);
 
+  private final static int UNLIMITED_QUERY_RATE = 1_000;
+
   private final String googleApiKey;
+  private final GeocodeCache cache;
+
+  private final int maxInFlight;
+  private final double queriesPerSecond;
+  private final String baseUrl;
 
   private final class GymWithDistance {
     private final String gymId;
@@ -40,68 +49,161 @@ public class GeocodeGyms {
   }
 
   public GeocodeGyms(final String googleApiKey) {
+    this(googleApiKey, null);
+  }
+
+  public GeocodeGyms(final String googleApiKey, final GeocodeCache cache) {
+    this(googleApiKey, cache, 16, 10d, null);
+  }
+
+  // baseUrl redirects all Maps API requests (e.g. to a local stub server), null for the Google hosts
+  public GeocodeGyms(final String googleApiKey, final GeocodeCache cache, final int maxInFlight,
+                     final double queriesPerSecond, final String baseUrl) {
     this.googleApiKey = googleApiKey;
+    this.cache = cache;
+    this.maxInFlight = maxInFlight;
+    this.queriesPerSecond = queriesPerSecond;
+    this.baseUrl = baseUrl;
+  }
+
+  // Returns the gyms whose geocode information was looked up again.
+  public List<Gym> geocode(final Set<Gym> gyms, final boolean incrementalUpdate) {
+    return start(incrementalUpdate).finish(gyms);
   }
 
-  public void geocode(final Set<Gym> gyms, final boolean incrementalUpdate) {
+  // Starts geocoding ahead of having all the gyms, for gyms passed in while they are still being scraped.
+  public Session start(final boolean incrementalUpdate) {
     logger.info("Reverse geocoding gyms:");
-    final GeoApiContext context = new GeoApiContext.Builder()
+    final GeoApiContext context = (baseUrl != null
+        ? new GeoApiContext.Builder(new BaseUrlRequestHandler.Builder(baseUrl))
+        : new GeoApiContext.Builder())
         .apiKey(googleApiKey)
+        // the client's own limiter also caps concurrent requests per host, so keep it out of the engine's way
+        .queryRateLimit(Math.max(maxInFlight, queriesPerSecond > 0d
+            ? (int) Math.ceil(queriesPerSecond)
+            : UNLIMITED_QUERY_RATE))
         .build();
 
-    final Set<String> placeTypes = Arrays.stream(PlaceType.values())
-        .map(PlaceType::toString)
-        .map(String::toUpperCase)
-        .collect(Collectors.toSet());
-
-    gyms.forEach(gym -> {
-      final GymWithDistance nearestGymWithDistance = gyms.stream()
-          .filter(otherGym -> !otherGym.getGymId().equals(gym.getGymId()))
-          .map(otherGym -> new GymWithDistance(otherGym.getGymId(), Haversine.distance(
-              gym.getGymInfo().getLatitude().doubleValue(),
-              gym.getGymInfo().getLongitude().doubleValue(),
-              otherGym.getGymInfo().getLatitude().doubleValue(),
-              otherGym.getGymInfo().getLongitude().doubleValue())
-              * 1_000d))
-          .min(Comparator.comparingDouble(GymWithDistance::getDistance))
-          .orElse(new GymWithDistance(null, 30d));
+    return new Session(context, new GeocodeEngine(context, cache, maxInFlight, queriesPerSecond), incrementalUpdate);
+  }
+
+  // Geocoding of one set of gyms. Which gyms need geocoding, and the radius places are searched in, depend on the
+  // nearest gyms over the whole set, so most of it waits for finish(); only gyms that are geocoded whatever gym
+  // turns out nearest (all of them in a full update, those without a nearest gym yet otherwise) have their
+  // addresses looked up as they are passed in.
+  public final class Session {
+    private final GeoApiContext context;
+    private final GeocodeEngine engine;
+    private final boolean incrementalUpdate;
+
+    private final List<CompletableFuture<Void>> requests = new ArrayList<>();
+    private final Set<Gym> addressedGyms = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private Session(final GeoApiContext context, final GeocodeEngine engine, final boolean incrementalUpdate) {
+      this.context = context;
+      this.engine = engine;
+      this.incrementalUpdate = incrementalUpdate;
+    }
 
+    // Called from one thread at a time; blocks while the engine's window of requests is full.
+    public void accept(final Gym gym) {
       final GymInfo gymInfo = gym.getGymInfo();
-      final String currentNearestGym = gymInfo.getNearestGym();
-
-      if (!incrementalUpdate || currentNearestGym == null || (incrementalUpdate && !currentNearestGym.equals(nearestGymWithDistance.gymId))) {
-        logger.info("  Getting geocode information for gym '" + gym.getGymName() + "'.");
-        gymInfo.setNearestGym(nearestGymWithDistance.gymId);
-
-        try {
-          final LatLng location = new LatLng(gymInfo.getLatitude().doubleValue(), gymInfo.getLongitude().doubleValue());
-
-          gymInfo.setAddressComponents(Arrays.stream(
-              GeocodingApi.newRequest(context)
-                  .latlng(location)
-                  .await())
-              .map(result -> new Geocode(result.formattedAddress, result.addressComponents))
-              .collect(Collectors.toCollection(LinkedHashSet::new)));
-
-          gymInfo.setPlaces(Arrays.stream(
-              new NearbySearchRequest(context)
-                  .location(location)
-                  .radius(Math.toIntExact(Math.round(nearestGymWithDistance.distance)) / 2)
-                  .await()
-                  .results)
-              .filter(place -> Arrays.stream(place.types)
-                  .map(String::toUpperCase)
-                  .anyMatch(placeTypes::contains))
-              .map(place -> place.name)
-              .collect(Collectors.toCollection(TreeSet::new)));
-        } catch (final ApiException
-            | InterruptedException
-            | IOException e) {
-          logger.error("Exception caught", e);
+
+      if (incrementalUpdate && gymInfo.getNearestGym() != null) {
+        return;
+      }
+
+      requests.add(reverseGeocode(gym, new LatLng(gymInfo.getLatitudeDegrees(), gymInfo.getLongitudeDegrees())));
+      addressedGyms.add(gym);
+      Metrics.counter("geocode.early-lookups").increment();
+    }
+
+    // Looks up everything still outstanding for the whole set of gyms, including those passed in before, and waits
+    // for it. Returns the gyms whose geocode information was looked up again.
+    public List<Gym> finish(final Set<Gym> gyms) {
+      final List<Gym> geocodedGyms = new ArrayList<>();
+
+      try {
+        final GymStore gymStore = new GymStore(gyms);
+
+        final GymIndex.Neighbor[] nearestGyms = new GymIndex.Neighbor[gymStore.size()];
+        try (final Stage stage = Metrics.stage("nearest-neighbour")) {
+          final GymIndex gymIndex = new GymIndex(gymStore);
+          for (int i = 0; i < nearestGyms.length; i++) {
+            nearestGyms[i] = gymIndex.nearest(i);
+          }
+          stage.setItems(nearestGyms.length);
+        }
+
+        // gyms iterate in the same order the store was filled in
+        int index = 0;
+        for (final Gym gym : gyms) {
+          final GymIndex.Neighbor nearestGym = nearestGyms[index];
+          final GymWithDistance nearestGymWithDistance = nearestGym != null
+              ? new GymWithDistance(nearestGym.getGymId(), nearestGym.getDistance() * 1_000d)
+              : new GymWithDistance(null, 30d);
+
+          final GymInfo gymInfo = gym.getGymInfo();
+          final String currentNearestGym = gymInfo.getNearestGym();
+
+          if (!incrementalUpdate || currentNearestGym == null || (incrementalUpdate && !currentNearestGym.equals(nearestGymWithDistance.gymId))) {
+            logger.info("  Getting geocode information for gym '" + gym.getGymName() + "'.");
+            Metrics.counter("gyms.geocoded").increment();
+            gymInfo.setNearestGym(nearestGymWithDistance.gymId);
+            geocodedGyms.add(gym);
+
+            final LatLng location = new LatLng(gymStore.getLatitude(index), gymStore.getLongitude(index));
+
+            if (!addressedGyms.contains(gym)) {
+              requests.add(reverseGeocode(gym, location));
+            }
+            requests.add(engine.nearbyPlaces(location, Math.toIntExact(Math.round(nearestGymWithDistance.distance)) / 2)
+                .thenAccept(gymInfo::setPlaces)
+                .exceptionally(e -> {
+                  logger.error("Exception caught finding places near gym '" + gym.getGymName() + "'", e);
+                  return null;
+                }));
+          } else {
+            logger.info("  Keeping current geocode information for gym '" + gym.getGymName() + "'.");
+            Metrics.counter("gyms.geocode-kept").increment();
+          }
+
+          index++;
         }
-      } else {
-        logger.info("  Keeping current geocode information for gym '" + gym.getGymName() + "'.");
+
+        logger.info("Waiting for outstanding geocode requests...");
+        try (final Stage stage = Metrics.stage("geocode-wait")) {
+          CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).join();
+          stage.setItems(requests.size());
+        }
+
+        // results arrive one gym at a time, so neighbouring gyms each hold their own copy of what they share
+        final GeocodePool pool = new GeocodePool();
+        gyms.forEach(pool::intern);
+        logger.info("Pooled geocode information: " + pool + ".");
+      } finally {
+        close();
+      }
+
+      if (cache != null) {
+        cache.logStatistics();
       }
-    });
+
+      return geocodedGyms;
+    }
+
+    // Gives up on the gyms passed in so far, e.g. when scraping them failed.
+    public void close() {
+      context.shutdown();
+    }
+
+    private CompletableFuture<Void> reverseGeocode(final Gym gym, final LatLng location) {
+      return engine.reverseGeocode(location)
+          .thenAccept(gym.getGymInfo()::setAddressComponents)
+          .exceptionally(e -> {
+            logger.error("Exception caught reverse geocoding gym '" + gym.getGymName() + "'", e);
+            return null;
+          });
+    }
   }
 }
@@ -0,0 +1,381 @@
+package org.pgp.geocode;
+
+import org.pgp.object.Gym;
+import org.pgp.object.GymStore;
+
+import java.util.*;
+
+// Static k-d tree over gym locations, alternating latitude / longitude splits, answering
+// nearest-neighbour queries by great circle distance.
+public final class GymIndex {
+  private static final int LEAF_SIZE = 8;
+  private static final double PLANE_DISTANCE_SLACK = 1d - 1e-9d;
+
+  private final GymStore store;
+
+  // meridian bounds are only valid while every gym lies within a single hemisphere of longitude
+  private final boolean longitudePruning;
+
+  // permutation of gym indices; each node covers a contiguous slice split about its median
+  private final int[] order;
+
+  // coordinates and the cosines of latitudes, in the order above so a leaf is one contiguous batch
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final double[] cosLatitudes;
+
+  public static final class Neighbor {
+    private final int index;
+    private final String gymId;
+    private final double distance;
+
+    private Neighbor(final int index, final String gymId, final double distance) {
+      this.index = index;
+      this.gymId = gymId;
+      this.distance = distance;
+    }
+
+    // position of the gym in the index's store
+    public int getIndex() {
+      return index;
+    }
+
+    public String getGymId() {
+      return gymId;
+    }
+
+    // distance in kilometers
+    public double getDistance() {
+      return distance;
+    }
+  }
+
+  public GymIndex(final Collection<Gym> gyms) {
+    this(new GymStore(gyms));
+  }
+
+  public GymIndex(final GymStore store) {
+    this.store = store;
+
+    final int size = store.size();
+    order = new int[size];
+
+    double minLongitude = Double.POSITIVE_INFINITY;
+    double maxLongitude = Double.NEGATIVE_INFINITY;
+
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+
+      minLongitude = Math.min(minLongitude, store.getLongitude(i));
+      maxLongitude = Math.max(maxLongitude, store.getLongitude(i));
+    }
+
+    longitudePruning = maxLongitude - minLongitude < 180d;
+
+    build(0, size, 0);
+
+    latitudes = new double[size];
+    longitudes = new double[size];
+    cosLatitudes = new double[size];
+
+    for (int i = 0; i < size; i++) {
+      latitudes[i] = store.getLatitude(order[i]);
+      longitudes[i] = store.getLongitude(order[i]);
+      cosLatitudes[i] = Math.cos(Math.toRadians(latitudes[i]));
+    }
+  }
+
+  public int size() {
+    return order.length;
+  }
+
+  public Neighbor nearest(final Gym gym) {
+    return first(nearest(
+        gym.getGymInfo().getLatitudeDegrees(),
+        gym.getGymInfo().getLongitudeDegrees(),
+        1,
+        gym.getGymId()));
+  }
+
+  // nearest other gym to the gym at the given position in the store
+  public Neighbor nearest(final int index) {
+    return first(nearest(store.getLatitude(index), store.getLongitude(index), 1, store.getGymId(index)));
+  }
+
+  private static Neighbor first(final List<Neighbor> neighbors) {
+    return neighbors.isEmpty()
+        ? null
+        : neighbors.get(0);
+  }
+
+  // Returns the k gyms closest to the given point ordered by distance, ties broken by gym id,
+  // skipping any gym whose id equals excludedGymId (which may be null).
+  public List<Neighbor> nearest(final double latitude, final double longitude, final int k, final String excludedGymId) {
+    if (k <= 0) {
+      return Collections.emptyList();
+    }
+
+    final Search search = new Search(latitude, longitude, k, excludedGymId);
+    search(search, 0, order.length, 0);
+
+    final List<Neighbor> neighbors = new ArrayList<>(search.count);
+    for (int i = 0; i < search.count; i++) {
+      neighbors.add(new Neighbor(search.indices[i], store.getGymId(search.indices[i]), search.distances[i]));
+    }
+
+    return neighbors;
+  }
+
+  // Returns the store positions of gyms inside the given bounds (inclusive) in no particular order.
+  // Bounds crossing the antimeridian are not supported.
+  public int[] within(final double minLatitude, final double maxLatitude, final double minLongitude,
+                     final double maxLongitude) {
+    final Bounds bounds = new Bounds(minLatitude, maxLatitude, minLongitude, maxLongitude);
+    within(bounds, 0, order.length, 0);
+
+    return Arrays.copyOf(bounds.matches, bounds.count);
+  }
+
+  public GymStore getStore() {
+    return store;
+  }
+
+  private final class Bounds {
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+
+    private int[] matches = new int[16];
+    private int count;
+
+    private Bounds(final double minLatitude, final double maxLatitude, final double minLongitude,
+                   final double maxLongitude) {
+      this.minLatitude = minLatitude;
+      this.maxLatitude = maxLatitude;
+      this.minLongitude = minLongitude;
+      this.maxLongitude = maxLongitude;
+    }
+
+    private void offer(final int index) {
+      final double latitude = store.getLatitude(index);
+      final double longitude = store.getLongitude(index);
+
+      if (latitude < minLatitude || latitude > maxLatitude || longitude < minLongitude || longitude > maxLongitude) {
+        return;
+      }
+
+      if (count == matches.length) {
+        matches = Arrays.copyOf(matches, count * 2);
+      }
+      matches[count++] = index;
+    }
+  }
+
+  private void within(final Bounds bounds, final int from, final int to, final int depth) {
+    if (to - from <= LEAF_SIZE) {
+      for (int i = from; i < to; i++) {
+        bounds.offer(order[i]);
+      }
+      return;
+    }
+
+    final int median = (from + to) >>> 1;
+    final int index = order[median];
+    final boolean latitudeSplit = depth % 2 == 0;
+    final double split = coordinate(latitudeSplit, index);
+
+    bounds.offer(index);
+
+    // the lower slice holds coordinates at or below the split, the upper slice those at or above it
+    if ((latitudeSplit ? bounds.minLatitude : bounds.minLongitude) <= split) {
+      within(bounds, from, median, depth + 1);
+    }
+    if ((latitudeSplit ? bounds.maxLatitude : bounds.maxLongitude) >= split) {
+      within(bounds, median + 1, to, depth + 1);
+    }
+  }
+
+  private final class Search {
+    private final double latitude;
+    private final double longitude;
+    private final String excludedGymId;
+
+    private final double cosLatitude;
+
+    // current best candidates in ascending order
+    private final int[] indices;
+    private final double[] distances;
+    private int count;
+
+    private final double[] batch = new double[LEAF_SIZE];
+
+    private Search(final double latitude, final double longitude, final int k, final String excludedGymId) {
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.excludedGymId = excludedGymId;
+
+      cosLatitude = Math.cos(Math.toRadians(latitude));
+
+      indices = new int[k];
+      distances = new double[k];
+    }
+
+    // the gyms at tree positions from (inclusive) to to (exclusive), no more than a leaf
+    private void offer(final int from, final int to) {
+      Haversine.distances(latitude, longitude, cosLatitude, latitudes, longitudes, cosLatitudes,
+          from, to, isFull()
+              ? worstDistance()
+              : Double.POSITIVE_INFINITY,
+          batch);
+
+      for (int i = from; i < to; i++) {
+        offer(order[i], batch[i - from]);
+      }
+    }
+
+    private void offer(final int index, final double distance) {
+      if (isFull() && distance > worstDistance()) {
+        return;
+      }
+
+      if (excludedGymId != null && excludedGymId.equals(store.getGymId(index))) {
+        return;
+      }
+
+      int position = count;
+      while (position > 0 && isBefore(distance, index, distances[position - 1], indices[position - 1])) {
+        position--;
+      }
+
+      if (position == indices.length) {
+        return;
+      }
+
+      final int last = Math.min(count, indices.length - 1);
+      System.arraycopy(indices, position, indices, position + 1, last - position);
+      System.arraycopy(distances, position, distances, position + 1, last - position);
+
+      indices[position] = index;
+      distances[position] = distance;
+      count = last + 1;
+    }
+
+    private boolean isBefore(final double distance, final int index, final double otherDistance, final int otherIndex) {
+      return distance < otherDistance ||
+          (distance == otherDistance && store.getGymId(index).compareTo(store.getGymId(otherIndex)) < 0);
+    }
+
+    private boolean isFull() {
+      return count == indices.length;
+    }
+
+    private double worstDistance() {
+      return distances[count - 1];
+    }
+  }
+
+  private void build(final int from, final int to, final int depth) {
+    if (to - from <= LEAF_SIZE) {
+      return;
+    }
+
+    final boolean latitudeSplit = depth % 2 == 0;
+    final int median = (from + to) >>> 1;
+
+    select(latitudeSplit, from, to - 1, median);
+
+    build(from, median, depth + 1);
+    build(median + 1, to, depth + 1);
+  }
+
+  // quickselect so that order[median] holds the median coordinate of the slice
+  private void select(final boolean latitudeSplit, int left, int right, final int median) {
+    while (right > left) {
+      final double pivot = coordinate(latitudeSplit, order[(left + right) >>> 1]);
+      int i = left;
+      int j = right;
+
+      while (i <= j) {
+        while (coordinate(latitudeSplit, order[i]) < pivot) {
+          i++;
+        }
+        while (coordinate(latitudeSplit, order[j]) > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          final int swap = order[i];
+          order[i] = order[j];
+          order[j] = swap;
+          i++;
+          j--;
+        }
+      }
+
+      if (median <= j) {
+        right = j;
+      } else if (median >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private double coordinate(final boolean latitudeSplit, final int index) {
+    return latitudeSplit
+        ? store.getLatitude(index)
+        : store.getLongitude(index);
+  }
+
+  private void search(final Search search, final int from, final int to, final int depth) {
+    if (to - from <= LEAF_SIZE) {
+      search.offer(from, to);
+      return;
+    }
+
+    final int median = (from + to) >>> 1;
+    final int index = order[median];
+    final boolean latitudeSplit = depth % 2 == 0;
+
+    final double delta = (latitudeSplit
+        ? search.latitude
+        : search.longitude) - coordinate(latitudeSplit, index);
+
+    // descend into the side containing the query point first
+    if (delta < 0) {
+      search(search, from, median, depth + 1);
+    } else {
+      search(search, median + 1, to, depth + 1);
+    }
+
+    search.offer(median, median + 1);
+
+    // ties on the splitting plane must still be visited so the gym id tie-break is honored
+    if (!search.isFull() || planeDistance(search, latitudeSplit, delta) <= search.worstDistance()) {
+      if (delta < 0) {
+        search(search, median + 1, to, depth + 1);
+      } else {
+        search(search, from, median, depth + 1);
+      }
+    }
+  }
+
+  // Lower bound on the distance from the query point to any point on the far side of a split.
+  // Slightly understated to absorb rounding error, so a gym at exactly the current worst distance is never pruned.
+  private double planeDistance(final Search search, final boolean latitudeSplit, final double delta) {
+    final double angle = Math.toRadians(Math.abs(delta));
+
+    if (latitudeSplit) {
+      return Haversine.EARTH_RADIUS * angle * PLANE_DISTANCE_SLACK;
+    }
+
+    if (!longitudePruning || angle >= Math.PI / 2) {
+      return 0d;
+    }
+
+    // distance to the great circle through the splitting meridian
+    return Haversine.EARTH_RADIUS * Math.asin(Math.cos(Math.toRadians(search.latitude)) * Math.sin(angle)) *
+        PLANE_DISTANCE_SLACK;
+  }
+}
@@ -1,7 +1,10 @@
 package org.pgp.geocode;
 
 public final class Haversine {
-  private static final int EARTH_RADIUS = 6_371; // Approx Earth radius in KM
+  static final int EARTH_RADIUS = 6_371; // Approx Earth radius in KM
+
+  // widens pruning bounds just enough to absorb rounding error, so a point at exactly the bound is never pruned
+  private static final double PRUNING_SLACK = 1e-9d;
 
   public static double distance(double startLat, final double startLong,
                                 double endLat, final double endLong) {
@@ -13,12 +16,51 @@ public final class Haversine {
     endLat = Math.toRadians(endLat);
 
     final double a = haversin(dLat) + Math.cos(startLat) * Math.cos(endLat) * haversin(dLong);
+
+    return toDistance(a);
+  }
+
+  // Distances in km from one point to each of the points from (inclusive) to to (exclusive), exactly as distance()
+  // computes them but with the cosines of all latitudes (in radians) given, so they are not recomputed per pair;
+  // distances[0] receives the first. Points that are certainly further than maxDistance are not computed exactly and
+  // get positive infinity instead: those whose latitude difference alone exceeds it are skipped before any
+  // trigonometry, and those whose haversine exceeds that of maxDistance before the inverse.
+  public static void distances(final double latitude, final double longitude, final double cosLatitude,
+                               final double[] latitudes, final double[] longitudes, final double[] cosLatitudes,
+                               final int from, final int to, final double maxDistance, final double[] distances) {
+    final boolean pruning = maxDistance < Math.PI * EARTH_RADIUS;
+    final double maxAngle = maxDistance / EARTH_RADIUS * (1d + PRUNING_SLACK);
+    final double maxLatitudeDifference = Math.toDegrees(maxAngle);
+    final double maxHaversine = pruning
+        ? haversin(maxAngle) * (1d + PRUNING_SLACK)
+        : Double.POSITIVE_INFINITY;
+
+    for (int i = from; i < to; i++) {
+      final double latitudeDifference = latitudes[i] - latitude;
+
+      if (pruning && Math.abs(latitudeDifference) > maxLatitudeDifference) {
+        distances[i - from] = Double.POSITIVE_INFINITY;
+        continue;
+      }
+
+      final double a = haversin(Math.toRadians(latitudeDifference)) +
+          cosLatitude * cosLatitudes[i] * haversin(Math.toRadians(longitudes[i] - longitude));
+
+      distances[i - from] = a <= maxHaversine
+          ? toDistance(a)
+          : Double.POSITIVE_INFINITY;
+    }
+  }
+
+  private static double toDistance(final double a) {
     final double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
 
     return EARTH_RADIUS * c;
   }
 
   private static double haversin(final double val) {
-    return Math.pow(Math.sin(val / 2), 2);
+    final double sin = Math.sin(val / 2);
+
+    return sin * sin;
   }
-}
\ No newline at end of file
+}
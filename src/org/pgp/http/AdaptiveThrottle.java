@@ -0,0 +1,133 @@
+package org.pgp.http;
+
+import org.pgp.metrics.Metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Token bucket for a single endpoint whose refill rate adapts to how the server responds: additive increase
+// while requests succeed, multiplicative decrease plus a jittered exponential backoff when the server pushes back.
+public class AdaptiveThrottle {
+  private final String name;
+  private final double minRate;
+  private final double maxRate;
+  private final double rateIncrease;
+  private final double rateDecrease;
+  private final double burst;
+  private final long baseBackoff;
+  private final long maxBackoff;
+
+  // requests per second
+  private double rate;
+  private double tokens;
+  private long lastRefill;
+  private long backoffUntil;
+
+  private int consecutiveFailures;
+
+  private long successes;
+  private long failures;
+  private long backoffs;
+  private long backoffNanos;
+
+  @ConstructorProperties({"name", "initialRate", "minRate", "maxRate", "rateIncrease", "rateDecrease", "burst",
+      "baseBackoffMillis", "maxBackoffMillis"})
+  public AdaptiveThrottle(final String name, final double initialRate, final double minRate, final double maxRate,
+                          final double rateIncrease, final double rateDecrease, final double burst,
+                          final long baseBackoffMillis, final long maxBackoffMillis) {
+    this.name = name;
+    this.minRate = minRate;
+    this.maxRate = maxRate;
+    this.rateIncrease = rateIncrease;
+    this.rateDecrease = rateDecrease;
+    this.burst = Math.max(1d, burst);
+    this.baseBackoff = TimeUnit.MILLISECONDS.toNanos(baseBackoffMillis);
+    this.maxBackoff = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+
+    rate = Math.max(minRate, Math.min(maxRate, initialRate));
+    tokens = 1d;
+    lastRefill = System.nanoTime();
+    backoffUntil = lastRefill;
+  }
+
+  // blocks until a request may be sent
+  public void acquire() throws InterruptedException {
+    while (true) {
+      final long delay;
+      synchronized (this) {
+        final long now = System.nanoTime();
+        refill(now);
+
+        if (backoffUntil - now > 0L) {
+          delay = backoffUntil - now;
+        } else if (tokens >= 1d) {
+          tokens -= 1d;
+          return;
+        } else {
+          delay = (long) Math.ceil((1d - tokens) * TimeUnit.SECONDS.toNanos(1L) / rate);
+        }
+      }
+
+      TimeUnit.NANOSECONDS.sleep(delay);
+    }
+  }
+
+  public synchronized void onSuccess() {
+    successes++;
+    consecutiveFailures = 0;
+    rate = Math.min(maxRate, rate + rateIncrease);
+  }
+
+  // server asked us to slow down, or answered with nothing at all
+  public synchronized void onThrottled() {
+    failures++;
+    consecutiveFailures++;
+    rate = Math.max(minRate, rate * rateDecrease);
+
+    final long now = System.nanoTime();
+    refill(now);
+    tokens = 0d;
+
+    // equal jitter: half the exponential delay, plus a random part of the other half
+    final long ceiling = (long) Math.min(maxBackoff, baseBackoff * Math.pow(2d, consecutiveFailures - 1));
+    final long backoff = ceiling / 2L + (long) (ThreadLocalRandom.current().nextDouble() * (ceiling - ceiling / 2L));
+
+    backoffUntil = now + backoff;
+    backoffs++;
+    backoffNanos += backoff;
+
+    Metrics.timer("throttle.backoff").record(backoff);
+  }
+
+  public synchronized double getRate() {
+    return rate;
+  }
+
+  public synchronized long getSuccesses() {
+    return successes;
+  }
+
+  public synchronized long getFailures() {
+    return failures;
+  }
+
+  public synchronized long getBackoffs() {
+    return backoffs;
+  }
+
+  public synchronized long getBackoffMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(backoffNanos);
+  }
+
+  private void refill(final long now) {
+    tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1L));
+    lastRefill = now;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return name + ": " + String.format("%.3f", rate) + " requests/s, " + successes + " succeeded, " + failures +
+        " throttled, " + backoffs + " backoffs totalling " + TimeUnit.NANOSECONDS.toSeconds(backoffNanos) + "s";
+  }
+}
@@ -0,0 +1,53 @@
+package org.pgp.http;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Previous behaviour: one curl process per request, requiring curl in the path.
+public class CurlTransport implements HttpTransport {
+  private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "curl");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @Override
+  public CompletableFuture<String> post(final String url, final Map<String, String> headers, final String formData) {
+    final List<String> command = new ArrayList<>();
+    command.add("curl");
+    command.add(url);
+    command.add("-k");
+    command.add("-s");
+    headers.forEach((name, value) -> {
+      command.add("-H");
+      command.add(name + ": " + value);
+    });
+    command.add("--data");
+    command.add(formData);
+
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        final Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        try (final InputStream input = process.getInputStream()) {
+          return IOUtils.toString(input, StandardCharsets.UTF_8);
+        } finally {
+          process.destroy();
+        }
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, executor);
+  }
+}
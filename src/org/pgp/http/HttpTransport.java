@@ -0,0 +1,9 @@
+package org.pgp.http;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Posts url-encoded form data and completes with the response body.
+public interface HttpTransport {
+  CompletableFuture<String> post(String url, Map<String, String> headers, String formData);
+}
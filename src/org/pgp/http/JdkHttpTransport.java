@@ -0,0 +1,50 @@
+package org.pgp.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Sends requests from a single shared client so connections are kept alive (and multiplexed over HTTP/2
+// where the server supports it) across every query of a scrape.
+public class JdkHttpTransport implements HttpTransport {
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30L);
+  private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2L);
+
+  private final HttpClient client;
+
+  public JdkHttpTransport() {
+    this(HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build());
+  }
+
+  public JdkHttpTransport(final HttpClient client) {
+    this.client = client;
+  }
+
+  @Override
+  public CompletableFuture<String> post(final String url, final Map<String, String> headers, final String formData) {
+    final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+        .timeout(REQUEST_TIMEOUT)
+        .POST(HttpRequest.BodyPublishers.ofString(formData, StandardCharsets.UTF_8));
+
+    headers.forEach(builder::header);
+
+    return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+        .thenApply(response -> {
+          if (response.statusCode() >= 400) {
+            throw new CompletionException(new IOException("HTTP " + response.statusCode() + " from " + url));
+          }
+          return response.body();
+        });
+  }
+}
@@ -0,0 +1,103 @@
+package org.pgp.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// How gym files are compressed. Reading doesn't need to be told: the format is recognized from the first bytes.
+public enum Compression {
+  NONE(""),
+  GZIP(".gz"),
+  // zlib framed deflate, as DeflaterOutputStream writes it
+  DEFLATE(".deflate");
+
+  public static final int DEFAULT_LEVEL = 6;
+
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  private final String extension;
+
+  Compression(final String extension) {
+    this.extension = extension;
+  }
+
+  // file name extension appended to the uncompressed name, e.g. gyms.json.gz
+  public String getExtension() {
+    return extension;
+  }
+
+  public static Compression parse(final String name) {
+    try {
+      return valueOf(name.toUpperCase());
+    } catch (final IllegalArgumentException e) {
+      throw new IllegalArgumentException("Compression '" + name + "' is not one of none, gzip or deflate.");
+    }
+  }
+
+  OutputStream compress(final OutputStream out, final int level) throws IOException {
+    switch (this) {
+      case GZIP: {
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+          {
+            def.setLevel(level);
+          }
+        };
+      }
+      case DEFLATE: {
+        return new DeflaterOutputStream(out, new Deflater(level), BUFFER_SIZE) {
+          // the deflater is our own, so is released here rather than left to finalization
+          @Override
+          public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              def.end();
+            }
+          }
+        };
+      }
+      default: {
+        return out;
+      }
+    }
+  }
+
+  InputStream decompress(final InputStream in) throws IOException {
+    switch (this) {
+      case GZIP: {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+      }
+      case DEFLATE: {
+        return new InflaterInputStream(in);
+      }
+      default: {
+        return in;
+      }
+    }
+  }
+
+  // gzip starts 1f 8b; zlib with a deflate method byte (low nibble 8) and a header check that is a multiple of 31.
+  // A gyms file starts with whitespace, [ or {, none of which pass as either.
+  static Compression detect(final byte[] header, final int length) {
+    if (length < 2) {
+      return NONE;
+    }
+
+    final int first = header[0] & 0xff;
+    final int second = header[1] & 0xff;
+
+    if (first == 0x1f && second == 0x8b) {
+      return GZIP;
+    }
+    if ((first & 0x0f) == Deflater.DEFLATED && (first << 8 | second) % 31 == 0) {
+      return DEFLATE;
+    }
+
+    return NONE;
+  }
+}
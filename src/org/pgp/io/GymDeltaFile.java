@@ -0,0 +1,154 @@
+package org.pgp.io;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.pgp.merge.GymDelta;
+import org.pgp.object.Gym;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Gym deltas as json files named by their sequence number within a directory:
+//   {"sequence": 12, "complete": false, "added": [gyms], "updated": [gyms], "removed": [gym ids]}
+public final class GymDeltaFile {
+  private static final Pattern FILE_NAME = Pattern.compile("gyms-delta-(\\d+)\\.json");
+
+  private GymDeltaFile() {
+  }
+
+  public static Path path(final Path directory, final long sequence) {
+    return directory.resolve("gyms-delta-" + sequence + ".json");
+  }
+
+  // delta files in the directory by sequence number
+  public static Map<Long, Path> list(final Path directory) throws IOException {
+    final Map<Long, Path> deltas = new TreeMap<>();
+
+    if (!Files.isDirectory(directory)) {
+      return deltas;
+    }
+
+    try (final DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+      for (final Path path : paths) {
+        final Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+        if (matcher.matches()) {
+          deltas.put(Long.parseLong(matcher.group(1)), path);
+        }
+      }
+    }
+
+    return deltas;
+  }
+
+  public static long lastSequence(final Path directory) throws IOException {
+    return list(directory).keySet().stream()
+        .mapToLong(Long::longValue)
+        .max()
+        .orElse(0L);
+  }
+
+  public static void write(final GymDelta delta, final Path file, final boolean prettyPrinting) throws IOException {
+    final GsonBuilder gsonBuilder = new GsonBuilder();
+    if (prettyPrinting) {
+      gsonBuilder.setPrettyPrinting();
+    }
+    final Gson gson = gsonBuilder.create();
+
+    // through a temporary file, as a partly written delta would still be listed and counted in the sequence
+    try (final GymFiles.Output output = GymFiles.create(file.toFile(), Compression.NONE, Compression.DEFAULT_LEVEL)) {
+      try (final JsonWriter writer = gson.newJsonWriter(output.getWriter())) {
+        writer.beginObject();
+        writer.name("sequence").value(delta.getSequence());
+        writer.name("complete").value(delta.isComplete());
+
+        writer.name("added").beginArray();
+        for (final Gym gym : delta.getAdded()) {
+          gson.toJson(gym, Gym.class, writer);
+        }
+        writer.endArray();
+
+        writer.name("updated").beginArray();
+        for (final Gym gym : delta.getUpdated()) {
+          gson.toJson(gym, Gym.class, writer);
+        }
+        writer.endArray();
+
+        writer.name("removed").beginArray();
+        for (final String gymId : delta.getRemoved()) {
+          writer.value(gymId);
+        }
+        writer.endArray();
+        writer.endObject();
+      }
+      output.commit();
+    }
+  }
+
+  public static GymDelta read(final Path file) throws IOException {
+    final Gson gson = new Gson();
+
+    long sequence = 0L;
+    boolean complete = false;
+
+    // complete comes before the gyms in files this writes, but is applied afterwards in case it doesn't
+    final GymDelta changes = new GymDelta();
+
+    try (final JsonReader reader = gson.newJsonReader(Files.newBufferedReader(file))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "sequence": {
+            sequence = reader.nextLong();
+            break;
+          }
+          case "complete": {
+            complete = reader.nextBoolean();
+            break;
+          }
+          case "added": {
+            reader.beginArray();
+            while (reader.hasNext()) {
+              changes.add(gson.fromJson(reader, Gym.class));
+            }
+            reader.endArray();
+            break;
+          }
+          case "updated": {
+            reader.beginArray();
+            while (reader.hasNext()) {
+              changes.update(gson.fromJson(reader, Gym.class));
+            }
+            reader.endArray();
+            break;
+          }
+          case "removed": {
+            reader.beginArray();
+            while (reader.hasNext()) {
+              changes.remove(reader.nextString());
+            }
+            reader.endArray();
+            break;
+          }
+          default: {
+            reader.skipValue();
+          }
+        }
+      }
+      reader.endObject();
+    }
+
+    final GymDelta delta = new GymDelta(complete);
+    delta.addAll(changes);
+    delta.setSequence(sequence);
+
+    return delta;
+  }
+}
@@ -0,0 +1,338 @@
+package org.pgp.io;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.maps.model.AddressComponent;
+import org.pgp.object.Geocode;
+import org.pgp.object.GeocodePool;
+import org.pgp.object.Gym;
+import org.pgp.object.GymInfo;
+
+import java.io.*;
+import java.util.*;
+
+// Gyms with the geocoding data they share written once, in a dictionary ahead of them, which the gyms refer to by
+// index. Most gyms in a town repeat the same locality, county, state and country components and much the same
+// places, so this is a fraction of the size of the plain array:
+//   {"dictionary": {"addressComponents": [components], "geocodes": [{"formattedAddress": "...",
+//     "addressComponents": [component indices]}], "places": [names]},
+//    "gyms": [gyms, with gymInfo.addressComponents and gymInfo.places as geocode and place indices]}
+public final class GymDictionaryJson {
+  static final String DICTIONARY = "dictionary";
+  static final String GYMS = "gyms";
+
+  private static final String ADDRESS_COMPONENTS = "addressComponents";
+  private static final String GEOCODES = "geocodes";
+  private static final String PLACES = "places";
+  private static final String FORMATTED_ADDRESS = "formattedAddress";
+  private static final String GYM_INFO = "gymInfo";
+
+  private GymDictionaryJson() {
+  }
+
+  public static void write(final Collection<Gym> gyms, final File file, final boolean prettyPrinting)
+      throws IOException {
+    write(gyms, file, prettyPrinting, Compression.NONE, Compression.DEFAULT_LEVEL);
+  }
+
+  public static void write(final Collection<Gym> gyms, final File file, final boolean prettyPrinting,
+                           final Compression compression, final int compressionLevel) throws IOException {
+    final GsonBuilder gsonBuilder = new GsonBuilder();
+    if (prettyPrinting) {
+      gsonBuilder.setPrettyPrinting();
+    }
+    final Gson gson = gsonBuilder.create();
+
+    final Map<List<Object>, Integer> components = new LinkedHashMap<>();
+    final Map<Geocode, Integer> geocodes = new LinkedHashMap<>();
+    final Map<String, Integer> places = new LinkedHashMap<>();
+
+    for (final Gym gym : gyms) {
+      final GymInfo gymInfo = gym.getGymInfo();
+      if (gymInfo == null) {
+        continue;
+      }
+
+      if (gymInfo.getAddressComponents() != null) {
+        for (final Geocode geocode : gymInfo.getAddressComponents()) {
+          if (geocode == null || geocodes.containsKey(geocode)) {
+            continue;
+          }
+          geocodes.put(geocode, geocodes.size());
+
+          if (geocode.getAddressComponents() != null) {
+            for (final AddressComponent component : geocode.getAddressComponents()) {
+              components.putIfAbsent(key(component), components.size());
+            }
+          }
+        }
+      }
+      if (gymInfo.getPlaces() != null) {
+        for (final String place : gymInfo.getPlaces()) {
+          if (place != null) {
+            places.putIfAbsent(place, places.size());
+          }
+        }
+      }
+    }
+
+    try (final GymFiles.Output output = GymFiles.create(file, compression, compressionLevel)) {
+      try (final JsonWriter writer = gson.newJsonWriter(output.getWriter())) {
+        write(gson, writer, gyms, components, geocodes, places);
+      }
+      output.commit();
+    }
+  }
+
+  private static void write(final Gson gson, final JsonWriter writer, final Collection<Gym> gyms,
+                            final Map<List<Object>, Integer> components, final Map<Geocode, Integer> geocodes,
+                            final Map<String, Integer> places) throws IOException {
+    writer.beginObject();
+
+    writer.name(DICTIONARY).beginObject();
+    writer.name(ADDRESS_COMPONENTS).beginArray();
+    final Set<List<Object>> written = new HashSet<>();
+    for (final Geocode geocode : geocodes.keySet()) {
+      if (geocode.getAddressComponents() == null) {
+        continue;
+      }
+      // in index order, as components were indexed in the order geocodes first refer to them
+      for (final AddressComponent component : geocode.getAddressComponents()) {
+        if (written.add(key(component))) {
+          gson.toJson(component, AddressComponent.class, writer);
+        }
+      }
+    }
+    writer.endArray();
+
+    writer.name(GEOCODES).beginArray();
+    for (final Geocode geocode : geocodes.keySet()) {
+      writer.beginObject();
+      writer.name(FORMATTED_ADDRESS).value(geocode.getFormattedAddress());
+      if (geocode.getAddressComponents() != null) {
+        writer.name(ADDRESS_COMPONENTS).beginArray();
+        for (final AddressComponent component : geocode.getAddressComponents()) {
+          writer.value(components.get(key(component)));
+        }
+        writer.endArray();
+      }
+      writer.endObject();
+    }
+    writer.endArray();
+
+    writer.name(PLACES).beginArray();
+    for (final String place : places.keySet()) {
+      writer.value(place);
+    }
+    writer.endArray();
+    writer.endObject();
+
+    writer.name(GYMS).beginArray();
+    for (final Gym gym : gyms) {
+      final JsonObject json = gson.toJsonTree(gym, Gym.class).getAsJsonObject();
+      final GymInfo gymInfo = gym.getGymInfo();
+
+      if (gymInfo != null) {
+        final JsonObject gymInfoJson = json.getAsJsonObject(GYM_INFO);
+        if (gymInfo.getAddressComponents() != null) {
+          gymInfoJson.add(ADDRESS_COMPONENTS, indices(gymInfo.getAddressComponents(), geocodes));
+        }
+        if (gymInfo.getPlaces() != null) {
+          gymInfoJson.add(PLACES, indices(gymInfo.getPlaces(), places));
+        }
+      }
+
+      gson.toJson(json, writer);
+    }
+    writer.endArray();
+
+    writer.endObject();
+  }
+
+  // Reads the dictionary, leaving the reader at the start of the gyms array. Dictionary entries are pooled, so gyms
+  // share them as they would have once read from the plain form.
+  static Dictionary readDictionary(final Gson gson, final JsonReader reader, final GeocodePool pool)
+      throws IOException {
+    final List<AddressComponent> components = new ArrayList<>();
+    final List<Geocode> geocodes = new ArrayList<>();
+    final List<String> places = new ArrayList<>();
+
+    reader.beginObject();
+    if (!DICTIONARY.equals(reader.nextName())) {
+      throw new IOException("Expected the dictionary ahead of the gyms.");
+    }
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+
+      switch (name) {
+        case ADDRESS_COMPONENTS: {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            components.add(pool.component(gson.fromJson(reader, AddressComponent.class)));
+          }
+          reader.endArray();
+          break;
+        }
+        case GEOCODES: {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            geocodes.add(pool.geocode(readGeocode(reader, components)));
+          }
+          reader.endArray();
+          break;
+        }
+        case PLACES: {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            places.add(pool.string(reader.nextString()));
+          }
+          reader.endArray();
+          break;
+        }
+        default: {
+          reader.skipValue();
+        }
+      }
+    }
+    reader.endObject();
+
+    if (!GYMS.equals(reader.nextName())) {
+      throw new IOException("Expected the gyms after the dictionary.");
+    }
+    reader.beginArray();
+
+    return new Dictionary(geocodes, places);
+  }
+
+  private static Geocode readGeocode(final JsonReader reader, final List<AddressComponent> components)
+      throws IOException {
+    final Geocode geocode = new Geocode();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        continue;
+      }
+
+      switch (name) {
+        case FORMATTED_ADDRESS: {
+          geocode.setFormattedAddress(reader.nextString());
+          break;
+        }
+        case ADDRESS_COMPONENTS: {
+          final List<AddressComponent> addressComponents = new ArrayList<>();
+          reader.beginArray();
+          while (reader.hasNext()) {
+            final int i = reader.nextInt();
+            if (i < 0 || i >= components.size()) {
+              throw new IOException("Dictionary index " + i + " out of range.");
+            }
+            addressComponents.add(components.get(i));
+          }
+          reader.endArray();
+          geocode.setAddressComponents(addressComponents.toArray(new AddressComponent[0]));
+          break;
+        }
+        default: {
+          reader.skipValue();
+        }
+      }
+    }
+    reader.endObject();
+
+    return geocode;
+  }
+
+  private static <T> JsonArray indices(final Collection<T> values, final Map<T, Integer> dictionary) {
+    final JsonArray indices = new JsonArray(values.size());
+    for (final T value : values) {
+      final Integer index = value != null
+          ? dictionary.get(value)
+          : null;
+
+      indices.add(index != null
+          ? new JsonPrimitive(index)
+          : JsonNull.INSTANCE);
+    }
+
+    return indices;
+  }
+
+  // AddressComponent with value equality, as types is an array
+  private static List<Object> key(final AddressComponent component) {
+    return component != null
+        ? Arrays.asList(component.longName, component.shortName, component.types != null
+        ? Arrays.asList(component.types)
+        : null)
+        : null;
+  }
+
+  static final class Dictionary {
+    private final List<Geocode> geocodes;
+    private final List<String> places;
+
+    private Dictionary(final List<Geocode> geocodes, final List<String> places) {
+      this.geocodes = geocodes;
+      this.places = places;
+    }
+
+    // Reads the next gym of the array, resolving its indices against the dictionary.
+    Gym next(final Gson gson, final JsonReader reader, final GeocodePool pool) throws IOException {
+      final JsonObject json = gson.fromJson(reader, JsonObject.class);
+      final JsonObject gymInfoJson = json.has(GYM_INFO) && json.get(GYM_INFO).isJsonObject()
+          ? json.getAsJsonObject(GYM_INFO)
+          : null;
+
+      final JsonElement geocodeIndices = gymInfoJson != null
+          ? gymInfoJson.remove(ADDRESS_COMPONENTS)
+          : null;
+      final JsonElement placeIndices = gymInfoJson != null
+          ? gymInfoJson.remove(PLACES)
+          : null;
+
+      final Gym gym = gson.fromJson(json, Gym.class);
+
+      if (gym.getGymInfo() != null) {
+        if (geocodeIndices != null && geocodeIndices.isJsonArray()) {
+          gym.getGymInfo().setAddressComponents(pool.geocodes(resolve(geocodeIndices.getAsJsonArray(), geocodes)));
+        }
+        if (placeIndices != null && placeIndices.isJsonArray()) {
+          gym.getGymInfo().setPlaces(pool.places(resolve(placeIndices.getAsJsonArray(), places)));
+        }
+      }
+
+      return gym;
+    }
+
+    private static <T> List<T> resolve(final JsonArray indices, final List<T> dictionary) throws IOException {
+      final List<T> values = new ArrayList<>(indices.size());
+      for (final JsonElement index : indices) {
+        if (index.isJsonNull()) {
+          values.add(null);
+          continue;
+        }
+
+        final int i = index.getAsInt();
+        if (i < 0 || i >= dictionary.size()) {
+          throw new IOException("Dictionary index " + i + " out of range.");
+        }
+        values.add(dictionary.get(i));
+      }
+
+      return values;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package org.pgp.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.metrics.Metrics;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.SecureRandom;
+
+// Opens gym files for reading whether compressed or not, and writes them, compressed or not, through a temporary
+// file in the same directory that replaces the file only once complete, so readers see the old file or the new one
+// and never part of one.
+public final class GymFiles {
+  private final static Logger logger = LogManager.getLogger(GymFiles.class);
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private GymFiles() {
+  }
+
+  public static Reader openReader(final File file) throws IOException {
+    final InputStream in = new BufferedInputStream(new FileInputStream(file), Compression.BUFFER_SIZE);
+
+    try {
+      final byte[] header = new byte[2];
+      int length = 0;
+
+      in.mark(header.length);
+      while (length < header.length) {
+        final int read = in.read(header, length, header.length - length);
+        if (read < 0) {
+          break;
+        }
+        length += read;
+      }
+      in.reset();
+
+      return new BufferedReader(new InputStreamReader(Compression.detect(header, length).decompress(in),
+          StandardCharsets.UTF_8));
+    } catch (final IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  public static Output create(final File file, final Compression compression, final int level) throws IOException {
+    return new Output(file.toPath(), compression, level);
+  }
+
+  // Written to through getWriter(), or getOutputStream() for binary files, then commit() puts the file in place;
+  // closing without committing discards it.
+  public static final class Output implements Closeable {
+    private final Path file;
+    private final Path temporaryFile;
+    private final Compression compression;
+    private final CountingOutputStream counter;
+    private final long start = System.nanoTime();
+
+    private Writer writer;
+
+    private boolean committed;
+
+    private Output(final Path file, final Compression compression, final int level) throws IOException {
+      this.file = file;
+      this.compression = compression;
+
+      temporaryFile = createTemporaryFile(file);
+
+      OutputStream out = null;
+      try {
+        out = new FileOutputStream(temporaryFile.toFile());
+        counter = new CountingOutputStream(compression.compress(out, level));
+      } catch (final IOException | RuntimeException e) {
+        if (out != null) {
+          out.close();
+        }
+        Files.deleteIfExists(temporaryFile);
+        throw e;
+      }
+    }
+
+    // Created with the default permissions a file written in place would get, as the moved file keeps them; those of
+    // Files.createTempFile() are owner only. A file being replaced passes its own permissions on instead.
+    private static Path createTemporaryFile(final Path file) throws IOException {
+      final Path directory = file.toAbsolutePath().getParent();
+      final String name = "." + file.getFileName() + ".";
+
+      while (true) {
+        final Path temporaryFile = directory.resolve(name + Long.toUnsignedString(RANDOM.nextLong(), 36) + ".tmp");
+
+        try {
+          Files.createFile(temporaryFile);
+        } catch (final FileAlreadyExistsException e) {
+          continue;
+        }
+
+        try {
+          if (Files.exists(file) && Files.getFileStore(temporaryFile)
+              .supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(temporaryFile, Files.getPosixFilePermissions(file));
+          }
+        } catch (final IOException | RuntimeException e) {
+          Files.deleteIfExists(temporaryFile);
+          throw e;
+        }
+
+        return temporaryFile;
+      }
+    }
+
+    public Writer getWriter() {
+      if (writer == null) {
+        writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8), Compression.BUFFER_SIZE);
+      }
+
+      return writer;
+    }
+
+    // unbuffered
+    public OutputStream getOutputStream() {
+      return counter;
+    }
+
+    // Closes the writer or stream, if not already closed, and replaces the file with what was written.
+    public void commit() throws IOException {
+      closeOutput();
+
+      try {
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      committed = true;
+
+      final long nanos = System.nanoTime() - start;
+      final long uncompressedBytes = counter.getCount();
+      final long bytes = Files.size(file);
+
+      Metrics.timer("output.write").record(nanos);
+      Metrics.counter("output.bytes-uncompressed").add(uncompressedBytes);
+      Metrics.counter("output.bytes-written").add(bytes);
+
+      if (compression != Compression.NONE) {
+        logger.info(String.format("Wrote '%s', %,d bytes %s compressed to %,d (%.1f%%) at %.1f MB/s.", file,
+            uncompressedBytes, compression.name().toLowerCase(), bytes,
+            uncompressedBytes > 0
+                ? 100d * bytes / uncompressedBytes
+                : 100d,
+            uncompressedBytes / 1e6d / Math.max(nanos / 1e9d, 1e-9d)));
+      } else {
+        logger.info(String.format("Wrote '%s', %,d bytes at %.1f MB/s.", file, bytes,
+            bytes / 1e6d / Math.max(nanos / 1e9d, 1e-9d)));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (committed) {
+        return;
+      }
+
+      try {
+        closeOutput();
+      } finally {
+        Files.deleteIfExists(temporaryFile);
+      }
+    }
+
+    private void closeOutput() throws IOException {
+      if (writer != null) {
+        writer.close();
+      } else {
+        counter.close();
+      }
+    }
+  }
+
+  // bytes before compression
+  private static final class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    private CountingOutputStream(final OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    private long getCount() {
+      return count;
+    }
+  }
+}
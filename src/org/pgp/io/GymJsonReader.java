@@ -0,0 +1,77 @@
+package org.pgp.io;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.pgp.object.GeocodePool;
+import org.pgp.object.Gym;
+
+import java.io.*;
+import java.util.Collection;
+
+// Reads a json array of gyms one record at a time rather than materializing the whole array first, or the gyms of
+// a GymDictionaryJson file; files may be compressed. Geocoding data the gyms have in common is pooled, so it is held
+// once rather than per gym.
+public final class GymJsonReader implements Closeable {
+  private final Gson gson = new Gson();
+  private final JsonReader reader;
+  private final GeocodePool pool;
+  private final GymDictionaryJson.Dictionary dictionary;
+
+  public GymJsonReader(final Reader reader) throws IOException {
+    this(reader, new GeocodePool());
+  }
+
+  public GymJsonReader(final Reader reader, final GeocodePool pool) throws IOException {
+    this.reader = gson.newJsonReader(reader);
+    this.pool = pool;
+
+    if (this.reader.peek() == JsonToken.BEGIN_OBJECT) {
+      dictionary = GymDictionaryJson.readDictionary(gson, this.reader, pool);
+    } else {
+      dictionary = null;
+      this.reader.beginArray();
+    }
+  }
+
+  public boolean hasNext() throws IOException {
+    return reader.hasNext();
+  }
+
+  public Gym next() throws IOException {
+    if (dictionary != null) {
+      return dictionary.next(gson, reader, pool);
+    }
+
+    final Gym gym = gson.fromJson(reader, Gym.class);
+    if (gym != null) {
+      pool.intern(gym);
+    }
+
+    return gym;
+  }
+
+  public GeocodePool getPool() {
+    return pool;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  public static <T extends Collection<Gym>> T read(final File file, final T gyms) throws IOException {
+    return read(file, gyms, new GeocodePool());
+  }
+
+  public static <T extends Collection<Gym>> T read(final File file, final T gyms, final GeocodePool pool)
+      throws IOException {
+    try (final GymJsonReader reader = new GymJsonReader(GymFiles.openReader(file), pool)) {
+      while (reader.hasNext()) {
+        gyms.add(reader.next());
+      }
+    }
+
+    return gyms;
+  }
+}
@@ -0,0 +1,58 @@
+package org.pgp.io;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import org.pgp.object.Gym;
+
+import java.io.*;
+
+// Writes a json array of gyms one record at a time, so the serialized form is never held in memory as a whole.
+public final class GymJsonWriter implements Closeable {
+  private final Gson gson;
+  private final JsonWriter writer;
+
+  private int count;
+
+  public GymJsonWriter(final Writer writer, final boolean prettyPrinting) throws IOException {
+    final GsonBuilder gsonBuilder = new GsonBuilder();
+    if (prettyPrinting) {
+      gsonBuilder.setPrettyPrinting();
+    }
+    gson = gsonBuilder.create();
+
+    this.writer = gson.newJsonWriter(writer);
+    this.writer.beginArray();
+  }
+
+  public void write(final Gym gym) throws IOException {
+    gson.toJson(gym, Gym.class, writer);
+    count++;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.endArray();
+    writer.close();
+  }
+
+  public static void write(final Iterable<Gym> gyms, final File file, final boolean prettyPrinting) throws IOException {
+    write(gyms, file, prettyPrinting, Compression.NONE, Compression.DEFAULT_LEVEL);
+  }
+
+  public static void write(final Iterable<Gym> gyms, final File file, final boolean prettyPrinting,
+                           final Compression compression, final int compressionLevel) throws IOException {
+    try (final GymFiles.Output output = GymFiles.create(file, compression, compressionLevel)) {
+      try (final GymJsonWriter writer = new GymJsonWriter(output.getWriter(), prettyPrinting)) {
+        for (final Gym gym : gyms) {
+          writer.write(gym);
+        }
+      }
+      output.commit();
+    }
+  }
+}
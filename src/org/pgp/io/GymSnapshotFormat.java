@@ -0,0 +1,70 @@
+package org.pgp.io;
+
+// Layout of the binary gym snapshot shared by GymSnapshotWriter and GymSnapshotReader. Fixed width fields are big
+// endian; everything inside a record is a varint.
+//
+//   header   magic, version, gym count, string count and the offset of each section below
+//   strings  the offset of each string relative to the first (int), then the strings as a varint byte length and
+//            UTF-8 bytes, most frequent first so the commonest strings get the shortest references
+//   blocks   per BLOCK_SIZE records, the latitude and longitude (int, degrees * 10^7) their coordinates are
+//            stored as deltas from
+//   index    per gym in gym id order, the string of its id and its record number (int each)
+//   offsets  per record, its offset relative to the first record (int)
+//   records  gyms in Morton order of their location, so the coordinates of a block lie close together
+//
+// String and list references are stored plus one, leaving zero for null.
+final class GymSnapshotFormat {
+  static final int MAGIC = 0x50475342;
+  static final int VERSION = 1;
+
+  // magic, version, gym count and string count, then the offsets of strings, blocks, index, offsets and records
+  static final int HEADER_SIZE = 4 * Integer.BYTES + 5 * Long.BYTES;
+
+  static final int BLOCK_SIZE = 16;
+  static final int INDEX_ENTRY_SIZE = 2 * Integer.BYTES;
+
+  static final int BASE_SCALE = 7;
+  private static final double BASE_UNIT = 1e7d;
+
+  private static final long[] POWERS_OF_TEN = new long[19];
+
+  static {
+    POWERS_OF_TEN[0] = 1L;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+    }
+  }
+
+  private GymSnapshotFormat() {
+  }
+
+  static int toBase(final double degrees) {
+    return Double.isNaN(degrees)
+        ? 0
+        : (int) Math.round(degrees * BASE_UNIT);
+  }
+
+  // A block base expressed with the given number of decimals. Truncation is fine since the writer and reader
+  // derive the same value; scales far from any real coordinate just fall back to storing the unscaled value itself.
+  static long rescale(final int base, final int scale) {
+    final int shift = scale - BASE_SCALE;
+
+    if (shift >= 0) {
+      return shift <= 9
+          ? base * POWERS_OF_TEN[shift]
+          : 0L;
+    }
+
+    return -shift < POWERS_OF_TEN.length
+        ? base / POWERS_OF_TEN[-shift]
+        : 0L;
+  }
+
+  static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1L);
+  }
+}
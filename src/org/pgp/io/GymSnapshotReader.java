@@ -0,0 +1,253 @@
+package org.pgp.io;
+
+import com.google.maps.model.AddressComponent;
+import com.google.maps.model.AddressComponentType;
+import org.pgp.object.Geocode;
+import org.pgp.object.Gym;
+import org.pgp.object.GymInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.pgp.io.GymSnapshotFormat.*;
+
+// Memory maps a binary gym snapshot written by GymSnapshotWriter, decoding only the gyms (and strings) asked for.
+// Safe for concurrent use; the mapping is released once the reader is garbage collected.
+public final class GymSnapshotReader {
+  private final MappedByteBuffer buffer;
+
+  private final int gymCount;
+  private final int stringCount;
+
+  private final int stringsOffset;
+  private final int stringDataOffset;
+  private final int blocksOffset;
+  private final int indexOffset;
+  private final int offsetsOffset;
+  private final int recordsOffset;
+
+  // decoded on first use
+  private final String[] strings;
+
+  public GymSnapshotReader(final File file) throws IOException {
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Gym snapshot '" + file + "' is too large to map.");
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+    }
+
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("'" + file + "' is not a gym snapshot.");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Gym snapshot '" + file + "' has unsupported version " + buffer.getInt(4) + ".");
+    }
+
+    gymCount = buffer.getInt(8);
+    stringCount = buffer.getInt(12);
+    stringsOffset = Math.toIntExact(buffer.getLong(16));
+    blocksOffset = Math.toIntExact(buffer.getLong(24));
+    indexOffset = Math.toIntExact(buffer.getLong(32));
+    offsetsOffset = Math.toIntExact(buffer.getLong(40));
+    recordsOffset = Math.toIntExact(buffer.getLong(48));
+
+    stringDataOffset = stringsOffset + Integer.BYTES * stringCount;
+    strings = new String[stringCount];
+  }
+
+  public int size() {
+    return gymCount;
+  }
+
+  // the gym with the given id, or null if there is none
+  public Gym get(final String gymId) {
+    int low = 0;
+    int high = gymCount - 1;
+
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int entry = indexOffset + middle * INDEX_ENTRY_SIZE;
+      final int comparison = string(buffer.getInt(entry)).compareTo(gymId);
+
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return record(buffer.getInt(entry + Integer.BYTES));
+      }
+    }
+
+    return null;
+  }
+
+  // gyms in file (spatial) order
+  public Gym record(final int record) {
+    final int block = record / BLOCK_SIZE;
+    final int latitudeBase = buffer.getInt(blocksOffset + block * 2 * Integer.BYTES);
+    final int longitudeBase = buffer.getInt(blocksOffset + block * 2 * Integer.BYTES + Integer.BYTES);
+
+    return new Cursor(recordsOffset + buffer.getInt(offsetsOffset + record * Integer.BYTES))
+        .readGym(latitudeBase, longitudeBase);
+  }
+
+  public static <T extends Collection<Gym>> T read(final File file, final T gyms) throws IOException {
+    final GymSnapshotReader reader = new GymSnapshotReader(file);
+
+    for (int i = 0; i < reader.size(); i++) {
+      gyms.add(reader.record(i));
+    }
+
+    return gyms;
+  }
+
+  private String string(final int id) {
+    String string = strings[id];
+
+    if (string == null) {
+      final Cursor cursor = new Cursor(stringDataOffset + buffer.getInt(stringsOffset + id * Integer.BYTES));
+      final byte[] bytes = new byte[(int) cursor.readVarint()];
+
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = buffer.get(cursor.position + i);
+      }
+
+      // racing threads decode equal strings, either may win
+      string = new String(bytes, StandardCharsets.UTF_8);
+      strings[id] = string;
+    }
+
+    return string;
+  }
+
+  // reads by absolute position so concurrent readers never share buffer state
+  private final class Cursor {
+    private int position;
+
+    private Cursor(final int position) {
+      this.position = position;
+    }
+
+    private long readVarint() {
+      long value = 0L;
+
+      for (int shift = 0; ; shift += 7) {
+        final byte b = buffer.get(position++);
+        value |= (long) (b & 0x7F) << shift;
+
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    private int readCount() {
+      return (int) readVarint() - 1;
+    }
+
+    private String readString() {
+      final long reference = readVarint();
+
+      return reference != 0L
+          ? string((int) (reference - 1L))
+          : null;
+    }
+
+    private Gym readGym(final int latitudeBase, final int longitudeBase) {
+      final Gym gym = new Gym(readString(), readString());
+
+      if (readVarint() == 0L) {
+        return gym;
+      }
+
+      final GymInfo gymInfo = new GymInfo();
+      gymInfo.setGymDescription(readString());
+      gymInfo.setLatitude(readCoordinate(latitudeBase));
+      gymInfo.setLongitude(readCoordinate(longitudeBase));
+      gymInfo.setNearestGym(readString());
+
+      final int placeCount = readCount();
+      if (placeCount >= 0) {
+        final List<String> places = new ArrayList<>(placeCount);
+        for (int i = 0; i < placeCount; i++) {
+          places.add(readString());
+        }
+        gymInfo.setPlaces(places);
+      }
+
+      final int geocodeCount = readCount();
+      if (geocodeCount >= 0) {
+        final List<Geocode> geocodes = new ArrayList<>(geocodeCount);
+        for (int i = 0; i < geocodeCount; i++) {
+          geocodes.add(readGeocode());
+        }
+        gymInfo.setAddressComponents(geocodes);
+      }
+
+      gym.setGymInfo(gymInfo);
+
+      return gym;
+    }
+
+    private Geocode readGeocode() {
+      if (readVarint() == 0L) {
+        return null;
+      }
+
+      final Geocode geocode = new Geocode();
+      geocode.setFormattedAddress(readString());
+
+      final int componentCount = readCount();
+      if (componentCount < 0) {
+        return geocode;
+      }
+
+      final AddressComponent[] components = new AddressComponent[componentCount];
+      for (int i = 0; i < componentCount; i++) {
+        if (readVarint() == 0L) {
+          continue;
+        }
+
+        final AddressComponent component = new AddressComponent();
+        component.longName = readString();
+        component.shortName = readString();
+
+        final int typeCount = readCount();
+        if (typeCount >= 0) {
+          component.types = new AddressComponentType[typeCount];
+          for (int j = 0; j < typeCount; j++) {
+            final String type = readString();
+            component.types[j] = type != null
+                ? AddressComponentType.valueOf(type)
+                : null;
+          }
+        }
+
+        components[i] = component;
+      }
+      geocode.setAddressComponents(components);
+
+      return geocode;
+    }
+
+    private BigDecimal readCoordinate(final int base) {
+      final long tag = readVarint();
+      if (tag == 0L) {
+        return null;
+      }
+
+      final int scale = (int) unZigZag(tag - 1L);
+
+      return BigDecimal.valueOf(unZigZag(readVarint()) + rescale(base, scale), scale);
+    }
+  }
+}
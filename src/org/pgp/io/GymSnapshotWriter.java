@@ -0,0 +1,369 @@
+package org.pgp.io;
+
+import com.google.maps.model.AddressComponent;
+import com.google.maps.model.AddressComponentType;
+import org.pgp.object.Geocode;
+import org.pgp.object.Gym;
+import org.pgp.object.GymInfo;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.pgp.io.GymSnapshotFormat.*;
+
+// Writes gyms as a binary snapshot (see GymSnapshotFormat), a compact alternative to gyms.json that
+// GymSnapshotReader can look gyms up in without reading it all. Gym ids are expected to be unique.
+public final class GymSnapshotWriter {
+  private final Map<String, Integer> stringIds = new HashMap<>();
+  private final List<String> strings = new ArrayList<>();
+
+  private final Bytes records = new Bytes();
+
+  private GymSnapshotWriter() {
+  }
+
+  // growable byte array with varint encoding, unlike ByteArrayOutputStream not synchronized per byte
+  private static final class Bytes {
+    private byte[] bytes = new byte[1 << 12];
+    private int size;
+
+    private void write(final byte[] source) {
+      ensureCapacity(source.length);
+      System.arraycopy(source, 0, bytes, size, source.length);
+      size += source.length;
+    }
+
+    private void writeVarint(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0L) {
+        bytes[size++] = (byte) ((value & 0x7FL) | 0x80L);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    private int size() {
+      return size;
+    }
+
+    private void ensureCapacity(final int length) {
+      if (size + length > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+      }
+    }
+
+    private void writeTo(final OutputStream out) throws IOException {
+      out.write(bytes, 0, size);
+    }
+  }
+
+  public static void write(final Collection<Gym> gyms, final File file) throws IOException {
+    new GymSnapshotWriter().writeSnapshot(gyms, file);
+  }
+
+  private void writeSnapshot(final Collection<Gym> gyms, final File file) throws IOException {
+    final Gym[] ordered = gyms.toArray(new Gym[0]);
+    final long[] keys = new long[ordered.length];
+
+    final Integer[] order = new Integer[ordered.length];
+    for (int i = 0; i < ordered.length; i++) {
+      keys[i] = mortonKey(ordered[i].getGymInfo());
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.<Integer>comparingLong(i -> keys[i]).thenComparing(i -> ordered[i].getGymId()));
+
+    final Gym[] recordGyms = new Gym[ordered.length];
+    for (int i = 0; i < ordered.length; i++) {
+      recordGyms[i] = ordered[order[i]];
+    }
+
+    buildDictionary(recordGyms);
+
+    final int blockCount = (recordGyms.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    final int[] latitudeBases = new int[blockCount];
+    final int[] longitudeBases = new int[blockCount];
+    final int[] offsets = new int[recordGyms.length];
+
+    for (int block = 0; block < blockCount; block++) {
+      final int from = block * BLOCK_SIZE;
+      final int to = Math.min(recordGyms.length, from + BLOCK_SIZE);
+
+      latitudeBases[block] = toBase(firstCoordinate(recordGyms, from, to, true));
+      longitudeBases[block] = toBase(firstCoordinate(recordGyms, from, to, false));
+
+      for (int i = from; i < to; i++) {
+        offsets[i] = records.size();
+        writeRecord(recordGyms[i], latitudeBases[block], longitudeBases[block]);
+      }
+    }
+
+    final Integer[] index = new Integer[recordGyms.length];
+    for (int i = 0; i < index.length; i++) {
+      index[i] = i;
+    }
+    Arrays.sort(index, Comparator.comparing(i -> recordGyms[i].getGymId()));
+
+    final Bytes stringData = new Bytes();
+    final int[] stringOffsets = new int[strings.size()];
+    for (int i = 0; i < strings.size(); i++) {
+      final byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+
+      stringOffsets[i] = stringData.size();
+      stringData.writeVarint(bytes.length);
+      stringData.write(bytes);
+    }
+
+    final long stringsOffset = HEADER_SIZE;
+    final long blocksOffset = stringsOffset + (long) Integer.BYTES * stringOffsets.length + stringData.size();
+    final long indexOffset = blocksOffset + 2L * Integer.BYTES * blockCount;
+    final long offsetsOffset = indexOffset + (long) INDEX_ENTRY_SIZE * index.length;
+    final long recordsOffset = offsetsOffset + (long) Integer.BYTES * offsets.length;
+
+    // readers may have the snapshot mapped, so it is replaced whole rather than truncated and rewritten under them
+    try (final GymFiles.Output output = GymFiles.create(file, Compression.NONE, Compression.DEFAULT_LEVEL)) {
+      try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output.getOutputStream()))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(recordGyms.length);
+        out.writeInt(strings.size());
+        out.writeLong(stringsOffset);
+        out.writeLong(blocksOffset);
+        out.writeLong(indexOffset);
+        out.writeLong(offsetsOffset);
+        out.writeLong(recordsOffset);
+
+        for (final int stringOffset : stringOffsets) {
+          out.writeInt(stringOffset);
+        }
+        stringData.writeTo(out);
+
+        for (int block = 0; block < blockCount; block++) {
+          out.writeInt(latitudeBases[block]);
+          out.writeInt(longitudeBases[block]);
+        }
+
+        for (final int record : index) {
+          out.writeInt(stringIds.get(recordGyms[record].getGymId()));
+          out.writeInt(record);
+        }
+
+        for (final int offset : offsets) {
+          out.writeInt(offset);
+        }
+        records.writeTo(out);
+      }
+      output.commit();
+    }
+  }
+
+  // numbered by descending frequency, so the commonest strings get single byte references; equally frequent
+  // strings keep the order they were first seen in
+  private void buildDictionary(final Gym[] gyms) {
+    final Map<String, int[]> counts = new LinkedHashMap<>();
+    final Consumer<String> counter = string -> {
+      if (string != null) {
+        counts.computeIfAbsent(string, key -> new int[1])[0]++;
+      }
+    };
+
+    for (final Gym gym : gyms) {
+      forEachString(gym, counter);
+    }
+
+    final List<Map.Entry<String, int[]>> entries = new ArrayList<>(counts.entrySet());
+    entries.sort(Comparator.comparingInt(entry -> -entry.getValue()[0]));
+
+    for (final Map.Entry<String, int[]> entry : entries) {
+      stringIds.put(entry.getKey(), strings.size());
+      strings.add(entry.getKey());
+    }
+  }
+
+  private static void forEachString(final Gym gym, final Consumer<String> consumer) {
+    consumer.accept(gym.getGymId());
+    consumer.accept(gym.getGymName());
+
+    final GymInfo gymInfo = gym.getGymInfo();
+    if (gymInfo == null) {
+      return;
+    }
+
+    consumer.accept(gymInfo.getGymDescription());
+    consumer.accept(gymInfo.getNearestGym());
+
+    if (gymInfo.getPlaces() != null) {
+      gymInfo.getPlaces().forEach(consumer);
+    }
+
+    if (gymInfo.getAddressComponents() != null) {
+      for (final Geocode geocode : gymInfo.getAddressComponents()) {
+        if (geocode == null) {
+          continue;
+        }
+
+        consumer.accept(geocode.getFormattedAddress());
+
+        if (geocode.getAddressComponents() != null) {
+          for (final AddressComponent component : geocode.getAddressComponents()) {
+            if (component == null) {
+              continue;
+            }
+
+            consumer.accept(component.longName);
+            consumer.accept(component.shortName);
+
+            if (component.types != null) {
+              for (final AddressComponentType type : component.types) {
+                consumer.accept(type != null
+                    ? type.name()
+                    : null);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void writeRecord(final Gym gym, final int latitudeBase, final int longitudeBase) {
+    writeString(gym.getGymId());
+    writeString(gym.getGymName());
+
+    final GymInfo gymInfo = gym.getGymInfo();
+    if (gymInfo == null) {
+      records.writeVarint(0L);
+      return;
+    }
+    records.writeVarint(1L);
+
+    writeString(gymInfo.getGymDescription());
+    writeCoordinate(gymInfo.getLatitude(), latitudeBase);
+    writeCoordinate(gymInfo.getLongitude(), longitudeBase);
+    writeString(gymInfo.getNearestGym());
+
+    final Collection<String> places = gymInfo.getPlaces();
+    writeCount(places);
+    if (places != null) {
+      places.forEach(this::writeString);
+    }
+
+    final Collection<Geocode> geocodes = gymInfo.getAddressComponents();
+    writeCount(geocodes);
+    if (geocodes != null) {
+      for (final Geocode geocode : geocodes) {
+        writeGeocode(geocode);
+      }
+    }
+  }
+
+  private void writeGeocode(final Geocode geocode) {
+    if (geocode == null) {
+      records.writeVarint(0L);
+      return;
+    }
+    records.writeVarint(1L);
+
+    writeString(geocode.getFormattedAddress());
+
+    final AddressComponent[] components = geocode.getAddressComponents();
+    writeCount(components);
+    if (components == null) {
+      return;
+    }
+
+    for (final AddressComponent component : components) {
+      if (component == null) {
+        records.writeVarint(0L);
+        continue;
+      }
+      records.writeVarint(1L);
+
+      writeString(component.longName);
+      writeString(component.shortName);
+
+      writeCount(component.types);
+      if (component.types != null) {
+        for (final AddressComponentType type : component.types) {
+          writeString(type != null
+              ? type.name()
+              : null);
+        }
+      }
+    }
+  }
+
+  // scale (zig-zag, plus one so zero marks a missing coordinate), then the unscaled value less the block's base
+  private void writeCoordinate(final BigDecimal coordinate, final int base) {
+    if (coordinate == null) {
+      records.writeVarint(0L);
+      return;
+    }
+
+    final int scale = coordinate.scale();
+    records.writeVarint(zigZag(scale) + 1L);
+    records.writeVarint(zigZag(coordinate.unscaledValue().longValue() - rescale(base, scale)));
+  }
+
+  private void writeString(final String string) {
+    records.writeVarint(string != null
+        ? stringIds.get(string) + 1L
+        : 0L);
+  }
+
+  private void writeCount(final Collection<?> collection) {
+    records.writeVarint(collection != null
+        ? collection.size() + 1L
+        : 0L);
+  }
+
+  private void writeCount(final Object[] array) {
+    records.writeVarint(array != null
+        ? array.length + 1L
+        : 0L);
+  }
+
+  private static double firstCoordinate(final Gym[] gyms, final int from, final int to, final boolean latitude) {
+    for (int i = from; i < to; i++) {
+      final GymInfo gymInfo = gyms[i].getGymInfo();
+
+      if (gymInfo != null) {
+        final double degrees = latitude
+            ? gymInfo.getLatitudeDegrees()
+            : gymInfo.getLongitudeDegrees();
+
+        if (!Double.isNaN(degrees)) {
+          return degrees;
+        }
+      }
+    }
+
+    return Double.NaN;
+  }
+
+  // position along a Z-order curve over a 65536 x 65536 grid of the globe, gyms without a location last
+  private static long mortonKey(final GymInfo gymInfo) {
+    if (gymInfo == null || Double.isNaN(gymInfo.getLatitudeDegrees()) || Double.isNaN(gymInfo.getLongitudeDegrees())) {
+      return Long.MAX_VALUE;
+    }
+
+    return spread(quantize(gymInfo.getLongitudeDegrees(), 180d)) |
+        spread(quantize(gymInfo.getLatitudeDegrees(), 90d)) << 1;
+  }
+
+  private static long quantize(final double degrees, final double limit) {
+    return Math.max(0L, Math.min(0xFFFFL, (long) ((degrees + limit) / (2d * limit) * 0x10000)));
+  }
+
+  // spreads the low 16 bits out to every other bit
+  private static long spread(long value) {
+    value = (value | value << 8) & 0x00FF00FFL;
+    value = (value | value << 4) & 0x0F0F0F0FL;
+    value = (value | value << 2) & 0x33333333L;
+    value = (value | value << 1) & 0x55555555L;
+
+    return value;
+  }
+}
@@ -0,0 +1,121 @@
+package org.pgp.merge;
+
+import org.pgp.object.Gym;
+
+import java.util.*;
+
+// Gyms added, updated and removed by a run, applied on top of the gyms the previous run wrote out. A complete
+// delta instead replaces them, e.g. after a full (not incremental) run.
+public final class GymDelta {
+  private long sequence;
+  private boolean complete;
+
+  private final Map<String, Gym> added = new TreeMap<>();
+  private final Map<String, Gym> updated = new TreeMap<>();
+  private final Set<String> removed = new TreeSet<>();
+
+  public GymDelta() {
+  }
+
+  public GymDelta(final boolean complete) {
+    this.complete = complete;
+  }
+
+  // The delta of a merge, where existing gyms whose ids are matched by new gyms with changes count as updated.
+  public static GymDelta of(final GymMerge.Result result) {
+    final GymDelta delta = new GymDelta();
+
+    result.getAdded().forEach(delta::add);
+    result.getUpdated().forEach(delta::update);
+    result.getRemoved().forEach(gym -> delta.remove(gym.getGymId()));
+
+    return delta;
+  }
+
+  // number of the run that produced this delta, applying to the gyms written by run sequence - 1
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(final long sequence) {
+    this.sequence = sequence;
+  }
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+  public Collection<Gym> getAdded() {
+    return added.values();
+  }
+
+  public Collection<Gym> getUpdated() {
+    return updated.values();
+  }
+
+  public Set<String> getRemoved() {
+    return removed;
+  }
+
+  public boolean isEmpty() {
+    return !complete && added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+  }
+
+  public int size() {
+    return added.size() + updated.size() + removed.size();
+  }
+
+  public void add(final Gym gym) {
+    if (removed.remove(gym.getGymId())) {
+      updated.put(gym.getGymId(), gym);
+    } else {
+      added.put(gym.getGymId(), gym);
+    }
+  }
+
+  public void update(final Gym gym) {
+    if (added.containsKey(gym.getGymId())) {
+      added.put(gym.getGymId(), gym);
+    } else {
+      updated.put(gym.getGymId(), gym);
+    }
+  }
+
+  public void remove(final String gymId) {
+    updated.remove(gymId);
+
+    // a gym added since the base was never in it
+    if (added.remove(gymId) == null && !complete) {
+      removed.add(gymId);
+    }
+  }
+
+  // Folds a later delta into this one, so applying the result equals applying both in turn.
+  public void addAll(final GymDelta later) {
+    if (later.complete) {
+      complete = true;
+      added.clear();
+      updated.clear();
+      removed.clear();
+    }
+
+    later.removed.forEach(this::remove);
+    later.added.values().forEach(this::add);
+    later.updated.values().forEach(this::update);
+    sequence = later.sequence;
+  }
+
+  public Set<Gym> apply(final Collection<Gym> gyms) {
+    final Map<String, Gym> gymsById = new TreeMap<>();
+
+    if (!complete) {
+      gyms.forEach(gym -> gymsById.put(gym.getGymId(), gym));
+      removed.forEach(gymsById::remove);
+    }
+
+    added.values().forEach(gym -> gymsById.put(gym.getGymId(), gym));
+    updated.values().forEach(gym -> gymsById.put(gym.getGymId(), gym));
+
+    return new TreeSet<>(gymsById.values());
+  }
+}
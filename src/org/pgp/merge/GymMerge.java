@@ -0,0 +1,139 @@
+package org.pgp.merge;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.object.Gym;
+import org.pgp.object.GymInfo;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+// Merges a freshly scraped gym set into an existing one, matching gyms by id.
+public final class GymMerge {
+  private static final Logger logger = LogManager.getLogger(GymMerge.class);
+
+  public static final class Result {
+    private final Set<Gym> gyms = new TreeSet<>();
+
+    private final List<Gym> added = new ArrayList<>();
+    private final List<Gym> removed = new ArrayList<>();
+    private final List<Gym> renamed = new ArrayList<>();
+    private final List<Gym> moved = new ArrayList<>();
+    private final List<Gym> updated = new ArrayList<>();
+
+    private Result() {
+    }
+
+    public Set<Gym> getGyms() {
+      return gyms;
+    }
+
+    public List<Gym> getAdded() {
+      return added;
+    }
+
+    public List<Gym> getRemoved() {
+      return removed;
+    }
+
+    public List<Gym> getRenamed() {
+      return renamed;
+    }
+
+    public List<Gym> getMoved() {
+      return moved;
+    }
+
+    // new gyms that differ from the existing gym with the same id in any way, including renamed and moved gyms
+    public List<Gym> getUpdated() {
+      return updated;
+    }
+  }
+
+  private GymMerge() {
+  }
+
+  // Copies existing geocoding data onto the new gyms with the same id.
+  public static void copyGeocodes(final Collection<Gym> existingGyms, final Collection<Gym> newGyms) {
+    newGyms.forEach(geocodeCopier(existingGyms));
+  }
+
+  // As above for new gyms arriving one at a time.
+  public static Consumer<Gym> geocodeCopier(final Collection<Gym> existingGyms) {
+    final Map<String, Gym> existingGymsById = index(existingGyms);
+
+    return newGym -> {
+      final Gym gym = existingGymsById.get(newGym.getGymId());
+
+      if (gym != null) {
+        newGym.getGymInfo().setAddressComponents(gym.getGymInfo().getAddressComponents());
+        newGym.getGymInfo().setPlaces(gym.getGymInfo().getPlaces());
+      }
+    };
+  }
+
+  // New gyms replace existing gyms with the same id; existing gyms absent from the new set are kept unless
+  // removeMissingGyms is set.
+  public static Result merge(final Collection<Gym> existingGyms, final Collection<Gym> newGyms,
+                             final boolean removeMissingGyms) {
+    return merge(existingGyms, newGyms, removeMissingGyms, Collections.emptySet());
+  }
+
+  // As above, additionally dropping existing gyms whose ids are explicitly given as removed.
+  public static Result merge(final Collection<Gym> existingGyms, final Collection<Gym> newGyms,
+                             final boolean removeMissingGyms, final Set<String> removedGymIds) {
+    final Result result = new Result();
+    final Map<String, Gym> newGymsById = index(newGyms);
+    final Set<String> matchedGymIds = new HashSet<>();
+
+    existingGyms.forEach(gym -> {
+      final Gym newGym = newGymsById.get(gym.getGymId());
+
+      if (newGym != null) {
+        matchedGymIds.add(gym.getGymId());
+
+        if (!Objects.equals(gym.getGymName(), newGym.getGymName())) {
+          logger.debug("Gym '" + gym.getGymName() + "' renamed to '" + newGym.getGymName() + "'.");
+          result.renamed.add(newGym);
+        }
+        if (isMoved(gym.getGymInfo(), newGym.getGymInfo())) {
+          logger.debug("Gym '" + newGym.getGymName() + "' moved.");
+          result.moved.add(newGym);
+        }
+        if (gym != newGym && (!gym.equals(newGym) || !Objects.equals(gym.getGymInfo(), newGym.getGymInfo()))) {
+          result.updated.add(newGym);
+        }
+      } else if (removeMissingGyms || removedGymIds.contains(gym.getGymId())) {
+        logger.debug("Gym '" + gym.getGymName() + "' removed.");
+        result.removed.add(gym);
+      } else {
+        result.gyms.add(gym);
+      }
+    });
+
+    newGyms.forEach(newGym -> {
+      if (!matchedGymIds.contains(newGym.getGymId())) {
+        logger.debug("Gym '" + newGym.getGymName() + "' added.");
+        result.added.add(newGym);
+      }
+      result.gyms.add(newGym);
+    });
+
+    logger.info("Merged gyms: " + result.added.size() + " added, " + result.removed.size() + " removed, " +
+        result.renamed.size() + " renamed, " + result.moved.size() + " moved, " + result.updated.size() + " updated, " +
+        result.gyms.size() + " total.");
+
+    return result;
+  }
+
+  private static Map<String, Gym> index(final Collection<Gym> gyms) {
+    final Map<String, Gym> gymsById = new HashMap<>(gyms.size() * 4 / 3 + 1);
+    gyms.forEach(gym -> gymsById.put(gym.getGymId(), gym));
+
+    return gymsById;
+  }
+
+  private static boolean isMoved(final GymInfo gymInfo, final GymInfo newGymInfo) {
+    return gymInfo != null && newGymInfo != null && !gymInfo.hasSameLocation(newGymInfo);
+  }
+}
@@ -0,0 +1,34 @@
+package org.pgp.metrics;
+
+// Times one request to an external endpoint, which may complete on another thread than the one that sent it.
+public final class ApiRequest {
+  private final String endpoint;
+  private final ApiRequestEvent event = new ApiRequestEvent();
+  private final long start;
+
+  ApiRequest(final String endpoint) {
+    this.endpoint = endpoint;
+
+    Metrics.counter("api." + endpoint + ".requests").increment();
+
+    event.endpoint = endpoint;
+    event.begin();
+    start = System.nanoTime();
+  }
+
+  public void succeeded() {
+    finish(false);
+  }
+
+  public void failed() {
+    Metrics.counter("api." + endpoint + ".failures").increment();
+    finish(true);
+  }
+
+  private void finish(final boolean failed) {
+    Metrics.timer("api." + endpoint + ".latency").recordSince(start);
+
+    event.failed = failed;
+    event.commit();
+  }
+}
@@ -0,0 +1,16 @@
+package org.pgp.metrics;
+
+import jdk.jfr.*;
+
+@Name("org.pgp.ApiRequest")
+@Label("API Request")
+@Category("GymScraper")
+@Description("A request to an external API, from being sent to its response")
+@StackTrace(false)
+final class ApiRequestEvent extends Event {
+  @Label("Endpoint")
+  String endpoint;
+
+  @Label("Failed")
+  boolean failed;
+}
@@ -0,0 +1,22 @@
+package org.pgp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Counter {
+  private final LongAdder count = new LongAdder();
+
+  Counter() {
+  }
+
+  public void increment() {
+    count.increment();
+  }
+
+  public void add(final long amount) {
+    count.add(amount);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+}
@@ -0,0 +1,96 @@
+package org.pgp.metrics;
+
+// Distribution of non-negative values in logarithmic buckets, each power of two split into SUB_BUCKETS,
+// so percentiles are reported to within about 1 / SUB_BUCKETS of the true value.
+public final class Histogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final long[] buckets = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max = Long.MIN_VALUE;
+
+  Histogram() {
+  }
+
+  public synchronized void record(final long value) {
+    final long clamped = Math.max(0L, value);
+
+    buckets[bucket(clamped)]++;
+    count++;
+    sum += clamped;
+    min = Math.min(min, clamped);
+    max = Math.max(max, clamped);
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getSum() {
+    return sum;
+  }
+
+  public synchronized long getMin() {
+    return count > 0L
+        ? min
+        : 0L;
+  }
+
+  public synchronized long getMax() {
+    return count > 0L
+        ? max
+        : 0L;
+  }
+
+  public synchronized double getMean() {
+    return count > 0L
+        ? (double) sum / count
+        : 0d;
+  }
+
+  // upper bound of the bucket holding the given percentile (0 - 100), capped at the largest value seen
+  public synchronized long getPercentile(final double percentile) {
+    if (count == 0L) {
+      return 0L;
+    }
+
+    final long rank = Math.max(1L, (long) Math.ceil(percentile / 100d * count));
+
+    long seen = 0L;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        return Math.min(max, upperBound(i));
+      }
+    }
+
+    return max;
+  }
+
+  private static int bucket(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    final int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+    return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBound(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    final int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long subBucket = bucket % SUB_BUCKETS;
+    final long lowerBound = (1L << magnitude) | (subBucket << (magnitude - SUB_BUCKET_BITS));
+
+    return lowerBound + (1L << (magnitude - SUB_BUCKET_BITS)) - 1L;
+  }
+}
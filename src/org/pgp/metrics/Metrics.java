@@ -0,0 +1,99 @@
+package org.pgp.metrics;
+
+import com.google.gson.GsonBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// Process wide registry of named counters, timers and histograms, written out as a json summary at the end of a run.
+public final class Metrics {
+  private static final Logger logger = LogManager.getLogger(Metrics.class);
+
+  private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  private Metrics() {
+  }
+
+  public static Counter counter(final String name) {
+    return counters.computeIfAbsent(name, key -> new Counter());
+  }
+
+  public static Timer timer(final String name) {
+    return timers.computeIfAbsent(name, key -> new Timer());
+  }
+
+  public static Histogram histogram(final String name) {
+    return histograms.computeIfAbsent(name, key -> new Histogram());
+  }
+
+  public static Stage stage(final String name) {
+    return new Stage(name);
+  }
+
+  public static ApiRequest apiRequest(final String endpoint) {
+    return new ApiRequest(endpoint);
+  }
+
+  public static void writeSummary(final Path file) throws IOException {
+    final Map<String, Object> summary = new LinkedHashMap<>();
+
+    final Map<String, Object> timerSummaries = new TreeMap<>();
+    timers.forEach((name, timer) -> timerSummaries.put(name, summarize(timer.getHistogram(), TimeUnit.MILLISECONDS)));
+    summary.put("timersMillis", timerSummaries);
+
+    final Map<String, Long> counterValues = new TreeMap<>();
+    counters.forEach((name, counter) -> counterValues.put(name, counter.getCount()));
+    summary.put("counters", counterValues);
+
+    final Map<String, Object> histogramSummaries = new TreeMap<>();
+    histograms.forEach((name, histogram) -> histogramSummaries.put(name, summarize(histogram, null)));
+    summary.put("histograms", histogramSummaries);
+
+    try (final Writer writer = Files.newBufferedWriter(file)) {
+      new GsonBuilder()
+          .setPrettyPrinting()
+          .create()
+          .toJson(summary, writer);
+    }
+
+    logger.info("Wrote run metrics to '" + file + "'.");
+  }
+
+  // timer histograms are in nanoseconds and converted to the given unit, plain histograms are left as is
+  private static Map<String, Object> summarize(final Histogram histogram, final TimeUnit unit) {
+    final Map<String, Object> summary = new LinkedHashMap<>();
+
+    summary.put("count", histogram.getCount());
+    summary.put("total", scale(histogram.getSum(), unit));
+    summary.put("mean", scale(histogram.getMean(), unit));
+    summary.put("min", scale(histogram.getMin(), unit));
+    summary.put("p50", scale(histogram.getPercentile(50d), unit));
+    summary.put("p95", scale(histogram.getPercentile(95d), unit));
+    summary.put("p99", scale(histogram.getPercentile(99d), unit));
+    summary.put("max", scale(histogram.getMax(), unit));
+
+    return summary;
+  }
+
+  private static Number scale(final double value, final TimeUnit unit) {
+    if (unit != null) {
+      return Timer.toUnit(value, unit);
+    }
+
+    return value == Math.rint(value)
+        ? (Number) (long) value
+        : (Number) value;
+  }
+}
@@ -0,0 +1,33 @@
+package org.pgp.metrics;
+
+// Times a stage of the run into the "stage.<name>" timer and a JFR event, for use in try-with-resources.
+public final class Stage implements AutoCloseable {
+  private final String name;
+  private final StageEvent event = new StageEvent();
+  private final long start;
+
+  private long items;
+
+  Stage(final String name) {
+    this.name = name;
+
+    event.stage = name;
+    event.begin();
+    start = System.nanoTime();
+  }
+
+  public void setItems(final long items) {
+    this.items = items;
+  }
+
+  @Override
+  public void close() {
+    Metrics.timer("stage." + name).recordSince(start);
+    if (items > 0L) {
+      Metrics.counter("stage." + name + ".items").add(items);
+    }
+
+    event.items = items;
+    event.commit();
+  }
+}
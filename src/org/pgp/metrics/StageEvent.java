@@ -0,0 +1,17 @@
+package org.pgp.metrics;
+
+import jdk.jfr.*;
+
+@Name("org.pgp.Stage")
+@Label("Stage")
+@Category("GymScraper")
+@Description("A stage of a gym scrape run")
+@StackTrace(false)
+final class StageEvent extends Event {
+  @Label("Stage")
+  String stage;
+
+  @Label("Items")
+  @Description("Gyms, tiles or requests handled by the stage")
+  long items;
+}
@@ -0,0 +1,35 @@
+package org.pgp.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+// Durations in nanoseconds.
+public final class Timer {
+  private final Histogram histogram = new Histogram();
+
+  Timer() {
+  }
+
+  public void record(final long nanos) {
+    histogram.record(nanos);
+  }
+
+  public void recordSince(final long startNanos) {
+    histogram.record(System.nanoTime() - startNanos);
+  }
+
+  public long getCount() {
+    return histogram.getCount();
+  }
+
+  public double getTotal(final TimeUnit unit) {
+    return toUnit(histogram.getSum(), unit);
+  }
+
+  Histogram getHistogram() {
+    return histogram;
+  }
+
+  static double toUnit(final double nanos, final TimeUnit unit) {
+    return nanos / TimeUnit.NANOSECONDS.convert(1L, unit);
+  }
+}
@@ -2,6 +2,7 @@ package org.pgp.object;
 
 import com.google.maps.model.AddressComponent;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 public class Geocode {
@@ -32,6 +33,7 @@ public class Geocode {
     this.addressComponents = addressComponents;
   }
 
+  // AddressComponent has neither equals() nor hashCode() of its own, so components are compared by their fields
   @Override
   public boolean equals(final Object obj) {
     if (this == obj) {
@@ -41,8 +43,23 @@ public class Geocode {
     if (obj instanceof Geocode) {
       final Geocode other = (Geocode) obj;
 
-      return Objects.equals(formattedAddress, other.formattedAddress) &&
-          Objects.deepEquals(addressComponents, other.addressComponents);
+      if (!Objects.equals(formattedAddress, other.formattedAddress)) {
+        return false;
+      }
+      if (addressComponents == null || other.addressComponents == null) {
+        return addressComponents == other.addressComponents;
+      }
+      if (addressComponents.length != other.addressComponents.length) {
+        return false;
+      }
+
+      for (int i = 0; i < addressComponents.length; i++) {
+        if (!equals(addressComponents[i], other.addressComponents[i])) {
+          return false;
+        }
+      }
+
+      return true;
     }
 
     return false;
@@ -50,6 +67,35 @@ public class Geocode {
 
   @Override
   public int hashCode() {
-    return Objects.hash(formattedAddress, addressComponents);
+    int hashCode = Objects.hashCode(formattedAddress);
+
+    if (addressComponents != null) {
+      for (final AddressComponent component : addressComponents) {
+        hashCode = 31 * hashCode + hashCode(component);
+      }
+    }
+
+    return hashCode;
+  }
+
+  static boolean equals(final AddressComponent component, final AddressComponent other) {
+    if (component == other) {
+      return true;
+    }
+    if (component == null || other == null) {
+      return false;
+    }
+
+    return Objects.equals(component.longName, other.longName) &&
+        Objects.equals(component.shortName, other.shortName) &&
+        Arrays.equals(component.types, other.types);
+  }
+
+  static int hashCode(final AddressComponent component) {
+    if (component == null) {
+      return 0;
+    }
+
+    return Objects.hash(component.longName, component.shortName, Arrays.hashCode(component.types));
   }
 }
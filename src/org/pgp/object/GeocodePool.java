@@ -0,0 +1,149 @@
+package org.pgp.object;
+
+import com.google.maps.model.AddressComponent;
+
+import java.util.*;
+
+// Canonical instances of the geocoding data gyms have in common, e.g. the locality, county, state and country
+// components of every gym in a town or the places around neighbouring gyms, so each is held once however many gyms
+// refer to it. Pooled instances are shared between gyms and must not be modified. Not thread safe.
+public final class GeocodePool {
+  private final Map<String, String> strings = new HashMap<>();
+  private final Map<Component, AddressComponent> components = new HashMap<>();
+  private final Map<Geocode, Geocode> geocodes = new HashMap<>();
+  private final Map<List<Geocode>, List<Geocode>> geocodeLists = new HashMap<>();
+  private final Map<List<String>, List<String>> placeLists = new HashMap<>();
+
+  private long componentsSeen;
+  private long geocodesSeen;
+  private long placesSeen;
+  private long distinctPlaces;
+
+  // AddressComponent with value equality, as a key
+  private static final class Component {
+    private final AddressComponent component;
+
+    private Component(final AddressComponent component) {
+      this.component = component;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof Component && Geocode.equals(component, ((Component) obj).component);
+    }
+
+    @Override
+    public int hashCode() {
+      return Geocode.hashCode(component);
+    }
+  }
+
+  // Replaces the gym's address components and places with their pooled equivalents.
+  public void intern(final Gym gym) {
+    final GymInfo gymInfo = gym.getGymInfo();
+    if (gymInfo == null) {
+      return;
+    }
+
+    if (gymInfo.getAddressComponents() != null) {
+      gymInfo.setAddressComponents(geocodes(gymInfo.getAddressComponents()));
+    }
+    if (gymInfo.getPlaces() != null) {
+      gymInfo.setPlaces(places(gymInfo.getPlaces()));
+    }
+  }
+
+  public Collection<Geocode> geocodes(final Collection<Geocode> geocodes) {
+    final List<Geocode> pooled = new ArrayList<>(geocodes.size());
+    for (final Geocode geocode : geocodes) {
+      pooled.add(geocode(geocode));
+    }
+
+    return geocodeLists.computeIfAbsent(pooled, Collections::unmodifiableList);
+  }
+
+  public Collection<String> places(final Collection<String> places) {
+    final List<String> pooled = new ArrayList<>(places.size());
+    for (final String place : places) {
+      final String pooledPlace = place != null
+          ? strings.putIfAbsent(place, place)
+          : null;
+      if (place != null && pooledPlace == null) {
+        distinctPlaces++;
+      }
+
+      pooled.add(pooledPlace != null
+          ? pooledPlace
+          : place);
+      placesSeen++;
+    }
+
+    return placeLists.computeIfAbsent(pooled, Collections::unmodifiableList);
+  }
+
+  public Geocode geocode(final Geocode geocode) {
+    if (geocode == null) {
+      return null;
+    }
+    geocodesSeen++;
+
+    final Geocode pooled = geocodes.get(geocode);
+    if (pooled != null) {
+      return pooled;
+    }
+
+    final AddressComponent[] addressComponents = geocode.getAddressComponents();
+    final AddressComponent[] pooledComponents = addressComponents != null
+        ? new AddressComponent[addressComponents.length]
+        : null;
+    if (addressComponents != null) {
+      for (int i = 0; i < addressComponents.length; i++) {
+        pooledComponents[i] = component(addressComponents[i]);
+      }
+    }
+
+    final Geocode added = new Geocode(string(geocode.getFormattedAddress()), pooledComponents);
+    geocodes.put(added, added);
+
+    return added;
+  }
+
+  public AddressComponent component(final AddressComponent component) {
+    if (component == null) {
+      return null;
+    }
+    componentsSeen++;
+
+    final AddressComponent pooled = components.get(new Component(component));
+    if (pooled != null) {
+      return pooled;
+    }
+
+    final AddressComponent added = new AddressComponent();
+    added.longName = string(component.longName);
+    added.shortName = string(component.shortName);
+    added.types = component.types;
+    components.put(new Component(added), added);
+
+    return added;
+  }
+
+  public String string(final String string) {
+    if (string == null) {
+      return null;
+    }
+
+    final String pooled = strings.putIfAbsent(string, string);
+
+    return pooled != null
+        ? pooled
+        : string;
+  }
+
+  // e.g. "1,204 distinct of 9,870 address components, 310 of 2,045 geocodes, 16 of 4,000 places"
+  @Override
+  public String toString() {
+    return String.format("%,d distinct of %,d address components, %,d of %,d geocodes, %,d of %,d places",
+        components.size(), componentsSeen, geocodes.size(), geocodesSeen, distinctPlaces, placesSeen);
+  }
+}
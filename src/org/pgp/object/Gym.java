@@ -21,6 +21,13 @@ public final class Gym implements Comparable<Gym> {
     this.gymInfo = gymInfo;
   }
 
+  // a copy that can be updated without changing the original, see GymInfo(GymInfo)
+  public Gym(final Gym gym) {
+    this(gym.gymId, gym.gymName, gym.gymInfo != null
+        ? new GymInfo(gym.gymInfo)
+        : null);
+  }
+
   public String getGymId() {
     return gymId;
   }
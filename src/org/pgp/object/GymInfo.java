@@ -1,13 +1,39 @@
 package org.pgp.object;
 
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.MathContext;
 import java.util.Collection;
 import java.util.Objects;
 
+// Coordinates are held as fixed point (unscaled value and decimal scale) rather than BigDecimal, which keeps them
+// exact, so they serialize exactly as the original decimals did, without an object per coordinate.
+@JsonAdapter(GymInfo.Adapter.class)
 public final class GymInfo {
+  private static final int NO_COORDINATE = Integer.MIN_VALUE;
+
+  private static final MathContext FIXED_POINT_PRECISION = new MathContext(18);
+
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
   private String gymDescription;
-  private BigDecimal latitude;
-  private BigDecimal longitude;
+
+  private long latitude;
+  private int latitudeScale = NO_COORDINATE;
+  private long longitude;
+  private int longitudeScale = NO_COORDINATE;
 
   private Collection<Geocode> addressComponents;
   private Collection<String> places;
@@ -17,10 +43,26 @@ public final class GymInfo {
   public GymInfo() {
   }
 
+  // Geocodes and places are replaced rather than modified, so the copy shares them.
+  public GymInfo(final GymInfo gymInfo) {
+    gymDescription = gymInfo.gymDescription;
+    latitude = gymInfo.latitude;
+    latitudeScale = gymInfo.latitudeScale;
+    longitude = gymInfo.longitude;
+    longitudeScale = gymInfo.longitudeScale;
+    addressComponents = gymInfo.addressComponents;
+    places = gymInfo.places;
+    nearestGym = gymInfo.nearestGym;
+  }
+
   public GymInfo(final String gymDescription, final String latitude, final String longitude, final String nearestGym) {
+    this(gymDescription, new BigDecimal(latitude), new BigDecimal(longitude), nearestGym);
+  }
+
+  public GymInfo(final String gymDescription, final BigDecimal latitude, final BigDecimal longitude, final String nearestGym) {
     this.gymDescription = gymDescription;
-    this.latitude = new BigDecimal(latitude);
-    this.longitude = new BigDecimal(longitude);
+    setLatitude(latitude);
+    setLongitude(longitude);
     this.nearestGym = nearestGym;
   }
 
@@ -33,19 +75,48 @@ public final class GymInfo {
   }
 
   public BigDecimal getLatitude() {
-    return latitude;
+    return toBigDecimal(latitude, latitudeScale);
   }
 
   public void setLatitude(final BigDecimal latitude) {
-    this.latitude = latitude;
+    final BigDecimal value = toFixedPoint(latitude);
+
+    this.latitude = value != null
+        ? value.unscaledValue().longValue()
+        : 0L;
+    latitudeScale = value != null
+        ? value.scale()
+        : NO_COORDINATE;
+  }
+
+  // latitude in degrees without going through BigDecimal, NaN if not set
+  public double getLatitudeDegrees() {
+    return toDouble(latitude, latitudeScale);
   }
 
   public BigDecimal getLongitude() {
-    return longitude;
+    return toBigDecimal(longitude, longitudeScale);
   }
 
   public void setLongitude(final BigDecimal longitude) {
-    this.longitude = longitude;
+    final BigDecimal value = toFixedPoint(longitude);
+
+    this.longitude = value != null
+        ? value.unscaledValue().longValue()
+        : 0L;
+    longitudeScale = value != null
+        ? value.scale()
+        : NO_COORDINATE;
+  }
+
+  // longitude in degrees without going through BigDecimal, NaN if not set
+  public double getLongitudeDegrees() {
+    return toDouble(longitude, longitudeScale);
+  }
+
+  public boolean hasSameLocation(final GymInfo other) {
+    return isSameCoordinate(latitude, latitudeScale, other.latitude, other.latitudeScale) &&
+        isSameCoordinate(longitude, longitudeScale, other.longitude, other.longitudeScale);
   }
 
   public Collection<Geocode> getAddressComponents() {
@@ -82,8 +153,10 @@ public final class GymInfo {
       final GymInfo other = (GymInfo) obj;
 
       return Objects.equals(gymDescription, other.gymDescription) &&
-          Objects.equals(latitude, other.latitude) &&
-          Objects.equals(longitude, other.longitude) &&
+          latitude == other.latitude &&
+          latitudeScale == other.latitudeScale &&
+          longitude == other.longitude &&
+          longitudeScale == other.longitudeScale &&
           Objects.equals(addressComponents, other.addressComponents) &&
           Objects.equals(places, other.places) &&
           Objects.equals(nearestGym, other.nearestGym);
@@ -94,6 +167,132 @@ public final class GymInfo {
 
   @Override
   public int hashCode() {
-    return Objects.hash(gymDescription, latitude, longitude, addressComponents, places, nearestGym);
+    return Objects.hash(gymDescription, latitude, latitudeScale, longitude, longitudeScale, addressComponents, places,
+        nearestGym);
+  }
+
+  private static BigDecimal toFixedPoint(final BigDecimal value) {
+    if (value == null || value.unscaledValue().bitLength() < Long.SIZE) {
+      return value;
+    }
+
+    // more significant digits than a long holds, far beyond any meaningful coordinate precision
+    return toFixedPoint(value.round(FIXED_POINT_PRECISION));
+  }
+
+  private static BigDecimal toBigDecimal(final long value, final int scale) {
+    return scale != NO_COORDINATE
+        ? BigDecimal.valueOf(value, scale)
+        : null;
+  }
+
+  private static double toDouble(final long value, final int scale) {
+    if (scale == NO_COORDINATE) {
+      return Double.NaN;
+    }
+
+    // both operands are exact here, so the quotient is the correctly rounded value BigDecimal.doubleValue() gives
+    if (scale >= 0 && scale < POWERS_OF_TEN.length && Math.abs(value) < 1L << 53) {
+      return value / POWERS_OF_TEN[scale];
+    }
+
+    return BigDecimal.valueOf(value, scale).doubleValue();
+  }
+
+  private static boolean isSameCoordinate(final long value, final int scale, final long otherValue, final int otherScale) {
+    if (scale == NO_COORDINATE || otherScale == NO_COORDINATE) {
+      return scale == otherScale;
+    }
+
+    return scale == otherScale
+        ? value == otherValue
+        : BigDecimal.valueOf(value, scale).compareTo(BigDecimal.valueOf(otherValue, otherScale)) == 0;
+  }
+
+  // Keeps the json form identical to the reflective one the BigDecimal fields used to get.
+  static final class Adapter implements TypeAdapterFactory {
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+      final TypeAdapter<Collection<Geocode>> geocodesAdapter = gson.getAdapter(new TypeToken<Collection<Geocode>>() {
+      });
+      final TypeAdapter<Collection<String>> placesAdapter = gson.getAdapter(new TypeToken<Collection<String>>() {
+      });
+
+      return (TypeAdapter<T>) new TypeAdapter<GymInfo>() {
+        @Override
+        public void write(final JsonWriter out, final GymInfo gymInfo) throws IOException {
+          if (gymInfo == null) {
+            out.nullValue();
+            return;
+          }
+
+          // null values are dropped along with their names unless the writer serializes nulls
+          out.beginObject();
+          out.name("gymDescription").value(gymInfo.gymDescription);
+          out.name("latitude").value(gymInfo.getLatitude());
+          out.name("longitude").value(gymInfo.getLongitude());
+          out.name("addressComponents");
+          geocodesAdapter.write(out, gymInfo.addressComponents);
+          out.name("places");
+          placesAdapter.write(out, gymInfo.places);
+          out.name("nearestGym").value(gymInfo.nearestGym);
+          out.endObject();
+        }
+
+        @Override
+        public GymInfo read(final JsonReader in) throws IOException {
+          if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+          }
+
+          final GymInfo gymInfo = new GymInfo();
+
+          in.beginObject();
+          while (in.hasNext()) {
+            final String name = in.nextName();
+
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+              continue;
+            }
+
+            switch (name) {
+              case "gymDescription": {
+                gymInfo.gymDescription = in.nextString();
+                break;
+              }
+              case "latitude": {
+                gymInfo.setLatitude(new BigDecimal(in.nextString()));
+                break;
+              }
+              case "longitude": {
+                gymInfo.setLongitude(new BigDecimal(in.nextString()));
+                break;
+              }
+              case "addressComponents": {
+                gymInfo.addressComponents = geocodesAdapter.read(in);
+                break;
+              }
+              case "places": {
+                gymInfo.places = placesAdapter.read(in);
+                break;
+              }
+              case "nearestGym": {
+                gymInfo.nearestGym = in.nextString();
+                break;
+              }
+              default: {
+                in.skipValue();
+              }
+            }
+          }
+          in.endObject();
+
+          return gymInfo;
+        }
+      };
+    }
   }
 }
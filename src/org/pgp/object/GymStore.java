@@ -0,0 +1,52 @@
+package org.pgp.object;
+
+import java.util.Collection;
+
+// Columnar copy of the fields the geocoding and nearest gym stages read, held in parallel arrays
+// in the iteration order of the gyms it was built from.
+public final class GymStore {
+  private final String[] gymIds;
+  private final String[] gymNames;
+  private final double[] latitudes;
+  private final double[] longitudes;
+
+  public GymStore(final Collection<Gym> gyms) {
+    final int size = gyms.size();
+
+    gymIds = new String[size];
+    gymNames = new String[size];
+    latitudes = new double[size];
+    longitudes = new double[size];
+
+    int i = 0;
+    for (final Gym gym : gyms) {
+      final GymInfo gymInfo = gym.getGymInfo();
+
+      gymIds[i] = gym.getGymId();
+      gymNames[i] = gym.getGymName();
+      latitudes[i] = gymInfo.getLatitudeDegrees();
+      longitudes[i] = gymInfo.getLongitudeDegrees();
+      i++;
+    }
+  }
+
+  public int size() {
+    return gymIds.length;
+  }
+
+  public String getGymId(final int index) {
+    return gymIds[index];
+  }
+
+  public String getGymName(final int index) {
+    return gymNames[index];
+  }
+
+  public double getLatitude(final int index) {
+    return latitudes[index];
+  }
+
+  public double getLongitude(final int index) {
+    return longitudes[index];
+  }
+}
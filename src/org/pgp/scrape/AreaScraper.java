@@ -4,7 +4,22 @@ import org.pgp.CoordinateRange;
 import org.pgp.object.Gym;
 
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface AreaScraper {
   Set<Gym> scrapeArea(CoordinateRange coordinateRange);
+
+  // Passes each gym in the area to the sink as soon as it is known rather than once the whole area is done,
+  // each gym at most once, though possibly from several threads at a time. Returns whether the scrape completed;
+  // if not, the gyms already passed on are all there is. Scrapers that can't do better finish the area first.
+  default boolean scrapeArea(final CoordinateRange coordinateRange, final Consumer<Gym> sink) {
+    final Set<Gym> gyms = scrapeArea(coordinateRange);
+    if (gyms == null) {
+      return false;
+    }
+
+    gyms.forEach(sink);
+
+    return true;
+  }
 }
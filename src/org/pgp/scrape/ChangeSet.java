@@ -0,0 +1,44 @@
+package org.pgp.scrape;
+
+import org.pgp.object.Gym;
+
+import java.io.IOException;
+import java.util.Set;
+
+// Gyms changed or removed since a scraper's previous run.  If complete, the changed gyms are every gym in the area,
+// as on a first run with nothing to compare against.
+public final class ChangeSet {
+  public interface Commit {
+    void run() throws IOException;
+  }
+
+  private final Set<Gym> changedGyms;
+  private final Set<String> removedGymIds;
+  private final boolean complete;
+  private final Commit commit;
+
+  public ChangeSet(final Set<Gym> changedGyms, final Set<String> removedGymIds, final boolean complete,
+                   final Commit commit) {
+    this.changedGyms = changedGyms;
+    this.removedGymIds = removedGymIds;
+    this.complete = complete;
+    this.commit = commit;
+  }
+
+  public Set<Gym> getChangedGyms() {
+    return changedGyms;
+  }
+
+  public Set<String> getRemovedGymIds() {
+    return removedGymIds;
+  }
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+  // Records that these changes have been applied, so the next run only sees changes made after them.
+  public void commit() throws IOException {
+    commit.run();
+  }
+}
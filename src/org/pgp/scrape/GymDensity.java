@@ -0,0 +1,62 @@
+package org.pgp.scrape;
+
+import org.pgp.CoordinateRange;
+import org.pgp.object.Gym;
+
+import java.util.Collection;
+
+// Known gym locations from a previous run, sorted by latitude, for counting how many fall within a range.
+final class GymDensity {
+  private final double[] latitudes;
+  private final double[] longitudes;
+
+  GymDensity(final Collection<Gym> gyms) {
+    final double[][] locations = gyms.stream()
+        .map(Gym::getGymInfo)
+        .filter(gymInfo -> gymInfo != null && gymInfo.getLatitude() != null && gymInfo.getLongitude() != null)
+        .map(gymInfo -> new double[]{gymInfo.getLatitudeDegrees(), gymInfo.getLongitudeDegrees()})
+        .sorted((first, second) -> Double.compare(first[0], second[0]))
+        .toArray(double[][]::new);
+
+    latitudes = new double[locations.length];
+    longitudes = new double[locations.length];
+
+    for (int i = 0; i < locations.length; i++) {
+      latitudes[i] = locations[i][0];
+      longitudes[i] = locations[i][1];
+    }
+  }
+
+  int count(final CoordinateRange coordinateRange) {
+    final double minLat = coordinateRange.getMinLat().doubleValue();
+    final double maxLat = coordinateRange.getMaxLat().doubleValue();
+    final double minLong = coordinateRange.getMinLong().doubleValue();
+    final double maxLong = coordinateRange.getMaxLong().doubleValue();
+
+    int count = 0;
+    for (int i = lowerBound(minLat); i < latitudes.length && latitudes[i] <= maxLat; i++) {
+      if (longitudes[i] >= minLong && longitudes[i] <= maxLong) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  // first index whose latitude is not below the given one
+  private int lowerBound(final double latitude) {
+    int low = 0;
+    int high = latitudes.length;
+
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (latitudes[middle] < latitude) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+}
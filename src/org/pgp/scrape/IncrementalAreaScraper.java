@@ -0,0 +1,7 @@
+package org.pgp.scrape;
+
+import org.pgp.CoordinateRange;
+
+public interface IncrementalAreaScraper extends AreaScraper {
+  ChangeSet scrapeChanges(CoordinateRange coordinateRange);
+}
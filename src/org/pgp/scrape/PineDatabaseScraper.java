@@ -1,79 +1,518 @@
 package org.pgp.scrape;
 
 import com.mysql.cj.jdbc.MysqlDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pgp.CoordinateRange;
+import org.pgp.metrics.Metrics;
+import org.pgp.metrics.Stage;
 import org.pgp.object.Gym;
 import org.pgp.object.GymInfo;
 
+import javax.sql.DataSource;
 import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
-public class PineDatabaseScraper implements AreaScraper {
+public class PineDatabaseScraper implements IncrementalAreaScraper {
   private static final Logger logger = LogManager.getLogger(PineDatabaseScraper.class);
 
+  private static final String COLUMNS = "gymId, name, description, latitude, longitude, nearestGym";
+  private static final String AREA_CONDITION = "latitude BETWEEN ? AND ? AND longitude BETWEEN ? AND ?";
+
+  private static final String WATERMARK = "watermark";
+  private static final String WATERMARK_AREA = "area";
+  private static final String PREVIOUS = ".previous";
+
+  private static final int MAX_PAGE_ATTEMPTS = 3;
+
   private final String host;
   private final String user;
   private final String password;
   private final String schema;
 
+  // rows per keyset page, 0 to read the whole area in one query
+  private final int pageSize;
+
+  // driver fetch size; Integer.MIN_VALUE streams rows one at a time, 0 lets the driver buffer the whole result
+  private final int fetchSize;
+
+  // number of tiles the area is split into and read in parallel, 1 to read it as a whole
+  private final int tiles;
+  private final int poolSize;
+
+  // column increasing on every change to a gym row (modification time or version), null if changes aren't tracked;
+  // values must follow commit order to within a run, as a change is only read up to one run after its value's
+  private final String changeColumn;
+  // soft delete flag column, null if gyms are never soft deleted
+  private final String deletedColumn;
+  // where the change column's high water mark from the last run is kept
+  private final String watermarkFile;
+
+  private DataSource dataSource;
+
   @ConstructorProperties({"host", "user", "password", "schema"})
   public PineDatabaseScraper(final String host, final String user, final String password, final String schema) {
+    this(host, user, password, schema, 0, 0);
+  }
+
+  @ConstructorProperties({"host", "user", "password", "schema", "pageSize", "fetchSize"})
+  public PineDatabaseScraper(final String host, final String user, final String password, final String schema,
+                             final int pageSize, final int fetchSize) {
+    this(host, user, password, schema, pageSize, fetchSize, 1, 1);
+  }
+
+  @ConstructorProperties({"host", "user", "password", "schema", "pageSize", "fetchSize", "tiles", "poolSize"})
+  public PineDatabaseScraper(final String host, final String user, final String password, final String schema,
+                             final int pageSize, final int fetchSize, final int tiles, final int poolSize) {
+    this(host, user, password, schema, pageSize, fetchSize, tiles, poolSize, null, null, null);
+  }
+
+  @ConstructorProperties({"host", "user", "password", "schema", "pageSize", "fetchSize", "tiles", "poolSize",
+      "changeColumn", "deletedColumn", "watermarkFile"})
+  public PineDatabaseScraper(final String host, final String user, final String password, final String schema,
+                             final int pageSize, final int fetchSize, final int tiles, final int poolSize,
+                             final String changeColumn, final String deletedColumn, final String watermarkFile) {
     this.host = host;
     this.user = user;
     this.password = password;
     this.schema = schema;
+    this.pageSize = pageSize;
+    this.fetchSize = fetchSize;
+    this.tiles = Math.max(1, tiles);
+    this.poolSize = Math.max(1, poolSize);
+    this.changeColumn = changeColumn;
+    this.deletedColumn = deletedColumn;
+    this.watermarkFile = watermarkFile;
+  }
+
+  // For reading from an already configured data source, such as an embedded database.
+  public PineDatabaseScraper(final DataSource dataSource, final int pageSize, final int fetchSize) {
+    this(dataSource, pageSize, fetchSize, 1);
+  }
+
+  public PineDatabaseScraper(final DataSource dataSource, final int pageSize, final int fetchSize, final int tiles) {
+    this(dataSource, pageSize, fetchSize, tiles, null, null, null);
+  }
+
+  public PineDatabaseScraper(final DataSource dataSource, final int pageSize, final int fetchSize, final int tiles,
+                             final String changeColumn, final String deletedColumn, final String watermarkFile) {
+    this(null, null, null, null, pageSize, fetchSize, tiles, tiles, changeColumn, deletedColumn, watermarkFile);
+    this.dataSource = dataSource;
   }
 
   private Connection connect() throws SQLException {
-    final MysqlDataSource dataSource = new MysqlDataSource();
-    dataSource.setServerName(host);
-    dataSource.setUser(user);
-    dataSource.setPassword(password);
-    dataSource.setDatabaseName(schema);
-    dataSource.setServerTimezone("UTC");
+    return dataSource().getConnection();
+  }
+
+  private synchronized DataSource dataSource() throws SQLException {
+    if (dataSource == null) {
+      final MysqlDataSource mysqlDataSource = new MysqlDataSource();
+      mysqlDataSource.setServerName(host);
+      mysqlDataSource.setUser(user);
+      mysqlDataSource.setPassword(password);
+      mysqlDataSource.setDatabaseName(schema);
+      mysqlDataSource.setServerTimezone("UTC");
+
+      // positive fetch sizes are only honored with server side cursors
+      mysqlDataSource.setUseCursorFetch(fetchSize > 0);
+
+      final HikariConfig config = new HikariConfig();
+      config.setPoolName("Pine");
+      config.setDataSource(mysqlDataSource);
+      config.setMaximumPoolSize(poolSize);
+      config.setMinimumIdle(0);
 
-    return dataSource.getConnection();
+      dataSource = new HikariDataSource(config);
+    }
+
+    return dataSource;
+  }
+
+  // Writes gyms back to the database this reads them from, over the same connections.
+  public PineDatabaseWriter writer(final int batchSize, final String addressColumn, final String placesColumn)
+      throws SQLException {
+    return new PineDatabaseWriter(dataSource(), batchSize, addressColumn, placesColumn, changeColumn);
+  }
+
+  private static final class Page {
+    private final List<Gym> gyms = new ArrayList<>();
+    private String lastGymId;
+    private int rows;
   }
 
   @Override
   public Set<Gym> scrapeArea(final CoordinateRange coordinateRange) {
-    try (final Connection connection = connect();
-         final Statement statement = connection.createStatement();
-         final ResultSet resultSet = statement.executeQuery("SELECT gymId, name, description, latitude, longitude, nearestGym FROM Gym WHERE " +
-             "latitude BETWEEN " + coordinateRange.getMinLat() + " AND " + coordinateRange.getMaxLat() + " AND " +
-             "longitude BETWEEN " + coordinateRange.getMinLong() + " AND " + coordinateRange.getMaxLong())) {
-      final Set<Gym> gyms = new TreeSet<>();
-
-      while (resultSet.next()) {
-        final String gymId = resultSet.getString("gymId");
-        final String name = resultSet.getString("name");
-        final String description = resultSet.getString("description");
-        final BigDecimal latitude = resultSet.getBigDecimal("latitude");
-        final BigDecimal longitude = resultSet.getBigDecimal("longitude");
-        final String nearestGym = resultSet.getString("nearestGym");
-
-        final Gym gym = new Gym(gymId, name);
-        final GymInfo gymInfo = new GymInfo(description, latitude.toString(), longitude.toString(), nearestGym);
-        gym.setGymInfo(gymInfo);
+    final Set<Gym> gyms = new TreeSet<>();
 
+    return scrapeArea(coordinateRange, gym -> {
+      synchronized (gyms) {
         gyms.add(gym);
+      }
+    })
+        ? gyms
+        : null;
+  }
+
+  // Gyms are passed on a page at a time, from the tile's thread when reading tiles in parallel.
+  @Override
+  public boolean scrapeArea(final CoordinateRange coordinateRange, final Consumer<Gym> sink) {
+    try (final Stage stage = Metrics.stage("scrape.pine")) {
+      // gyms on a shared tile edge are returned by both tiles, only the first is passed on
+      final Set<String> gymIds = ConcurrentHashMap.newKeySet();
+      final Consumer<Gym> tileSink = gym -> {
+        if (gymIds.add(gym.getGymId())) {
+          sink.accept(gym);
+        }
+      };
 
-        logger.debug("Added gym '" + name + "'.");
+      if (tiles == 1) {
+        readArea(coordinateRange, liveCondition(), null, null, tileSink);
+      } else {
+        readTiles(coordinateRange.subDivide(tiles), tileSink);
       }
+      stage.setItems(gymIds.size());
 
-      return gyms;
+      return true;
     } catch (final SQLException e) {
       logger.error(e);
     }
 
+    return false;
+  }
+
+  private void readTiles(final List<CoordinateRange> coordinateRanges, final Consumer<Gym> sink)
+      throws SQLException {
+    logger.info("Reading " + coordinateRanges.size() + " tiles over up to " + poolSize + " connections.");
+
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(poolSize, coordinateRanges.size()));
+    try {
+      final List<Future<?>> results = new ArrayList<>(coordinateRanges.size());
+      coordinateRanges.forEach(coordinateRange -> results.add(executor.submit(() -> {
+        readArea(coordinateRange, liveCondition(), null, null, sink);
+        return null;
+      })));
+
+      for (final Future<?> result : results) {
+        result.get();
+      }
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      throw new SQLException(e.getCause());
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // Soft deleted gyms are only of interest when reading changes.
+  private String liveCondition() {
+    return deletedColumn != null
+        ? " AND (" + deletedColumn + " IS NULL OR " + deletedColumn + " = 0)"
+        : "";
+  }
+
+  // Reads gyms matching the area, if given, and any extra condition on the given parameters, passing each page's gyms
+  // to the sink once the page is read; if removedGymIds is given, soft deleted gyms are collected there rather than
+  // passed on. Without an area the condition is all there is, so mustn't be empty.
+  private void readArea(final CoordinateRange coordinateRange, final String condition, final String[] parameters,
+                        final Set<String> removedGymIds, final Consumer<Gym> sink) throws SQLException {
+    String lastGymId = null;
+    int attempts = 0;
+
+    Connection connection = null;
+    try {
+      while (true) {
+        try {
+          if (connection == null) {
+            connection = connect();
+          }
+
+          final long pageStart = System.nanoTime();
+          final Page page = readPage(connection, coordinateRange, condition, parameters, lastGymId, removedGymIds);
+          attempts = 0;
+
+          page.gyms.forEach(sink);
+
+          Metrics.timer("pine.page").recordSince(pageStart);
+          Metrics.counter("pine.rows").add(page.rows);
+
+          if (pageSize <= 0 || page.rows < pageSize) {
+            break;
+          }
+
+          lastGymId = page.lastGymId;
+        } catch (final SQLException e) {
+          if (++attempts >= MAX_PAGE_ATTEMPTS) {
+            throw e;
+          }
+
+          // rows of the failed page already read are dropped and read again when it is retried
+          Metrics.counter("pine.page-retries").increment();
+          logger.warn("Reading gyms after '" + lastGymId + "' failed, retrying...", e);
+          close(connection);
+          connection = null;
+        }
+      }
+    } finally {
+      close(connection);
+    }
+  }
+
+  private Page readPage(final Connection connection, final CoordinateRange coordinateRange, final String condition,
+                        final String[] parameters, final String afterGymId, final Set<String> removedGymIds)
+      throws SQLException {
+    final boolean readDeleted = removedGymIds != null && deletedColumn != null;
+    final String query = "SELECT " + COLUMNS + (readDeleted
+        ? ", " + deletedColumn
+        : "") + " FROM Gym WHERE " + (coordinateRange != null
+        ? AREA_CONDITION + condition
+        : condition.substring(" AND ".length())) + (pageSize <= 0
+        ? ""
+        : (afterGymId != null
+        ? " AND gymId > ?"
+        : "") + " ORDER BY gymId LIMIT ?");
+
+    try (final PreparedStatement statement = connection.prepareStatement(query,
+        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      int parameter = 1;
+      if (coordinateRange != null) {
+        statement.setBigDecimal(parameter++, coordinateRange.getMinLat());
+        statement.setBigDecimal(parameter++, coordinateRange.getMaxLat());
+        statement.setBigDecimal(parameter++, coordinateRange.getMinLong());
+        statement.setBigDecimal(parameter++, coordinateRange.getMaxLong());
+      }
+
+      if (parameters != null) {
+        for (final String value : parameters) {
+          statement.setString(parameter++, value);
+        }
+      }
+
+      if (pageSize > 0) {
+        if (afterGymId != null) {
+          statement.setString(parameter++, afterGymId);
+        }
+        statement.setInt(parameter, pageSize);
+      }
+
+      statement.setFetchSize(fetchSize);
+
+      final Page page = new Page();
+
+      try (final ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          final String gymId = resultSet.getString("gymId");
+          final String name = resultSet.getString("name");
+          final String description = resultSet.getString("description");
+          final BigDecimal latitude = resultSet.getBigDecimal("latitude");
+          final BigDecimal longitude = resultSet.getBigDecimal("longitude");
+          final String nearestGym = resultSet.getString("nearestGym");
+
+          page.lastGymId = gymId;
+          page.rows++;
+
+          if (readDeleted && resultSet.getBoolean(deletedColumn)) {
+            removedGymIds.add(gymId);
+            logger.debug("Gym '" + name + "' deleted.");
+            continue;
+          }
+
+          final Gym gym = new Gym(gymId, name);
+          final GymInfo gymInfo = new GymInfo(description, latitude, longitude, nearestGym);
+          gym.setGymInfo(gymInfo);
+
+          page.gyms.add(gym);
+
+          logger.debug("Added gym '" + name + "'.");
+        }
+      }
+
+      return page;
+    }
+  }
+
+  @Override
+  public ChangeSet scrapeChanges(final CoordinateRange coordinateRange) {
+    if (changeColumn == null || watermarkFile == null) {
+      return complete(scrapeArea(coordinateRange), null);
+    }
+
+    try {
+      final String previousWatermark = loadWatermark(coordinateRange);
+      final String watermark = readWatermark();
+
+      if (previousWatermark == null) {
+        logger.info("No watermark from a previous run over " + coordinateRange + ", reading all gyms.");
+        return complete(scrapeArea(coordinateRange), watermark == null
+            ? null
+            : () -> saveWatermark(coordinateRange, watermark));
+      }
+
+      if (watermark == null) {
+        // no rows left to take a watermark from; the previous one stays for when there are
+        logger.info("No gyms to read changes from since " + changeColumn + " " + previousWatermark + ".");
+        return new ChangeSet(Collections.emptySet(), Collections.emptySet(), false, () -> {
+        });
+      }
+
+      final Set<Gym> changedGyms = new TreeSet<>();
+      final Set<String> removedGymIds = new TreeSet<>();
+      final int[] movedGyms = new int[1];
+
+      if (!previousWatermark.equals(watermark)) {
+        // rows changing while this runs are past the new watermark and left for the next run. The watermark is
+        // read before the rows, so a transaction with a lower change value can still commit after it; the range
+        // read starts from the run before last's watermark to pick those up.
+        // Changed rows are read wherever they are now, so gyms moved out of the area are removed from it; those that
+        // were never in it are removed to no effect.
+        try (final Stage stage = Metrics.stage("scrape.pine.changes")) {
+          readArea(null,
+              " AND " + changeColumn + " > ? AND " + changeColumn + " <= ?",
+              new String[]{previousWatermark, watermark},
+              removedGymIds, gym -> {
+                final GymInfo gymInfo = gym.getGymInfo();
+
+                if (coordinateRange.contains(gymInfo.getLatitude(), gymInfo.getLongitude())) {
+                  changedGyms.add(gym);
+                } else {
+                  removedGymIds.add(gym.getGymId());
+                  movedGyms[0]++;
+                }
+              });
+          stage.setItems(changedGyms.size() + removedGymIds.size());
+        }
+      }
+
+      logger.info(changedGyms.size() + " gyms changed and " + (removedGymIds.size() - movedGyms[0]) +
+          " removed since " + changeColumn + " " + previousWatermark + ", " + movedGyms[0] +
+          " changed outside the area.");
+
+      return new ChangeSet(changedGyms, removedGymIds, false, () -> saveWatermark(coordinateRange, watermark));
+    } catch (final IOException | SQLException e) {
+      logger.error(e);
+    }
+
     return null;
   }
+
+  private static ChangeSet complete(final Set<Gym> gyms, final ChangeSet.Commit commit) {
+    if (gyms == null) {
+      return null;
+    }
+
+    return new ChangeSet(gyms, Collections.emptySet(), true, commit != null
+        ? commit
+        : () -> {
+    });
+  }
+
+  private String readWatermark() throws SQLException {
+    try (final Connection connection = connect();
+         final PreparedStatement statement = connection.prepareStatement("SELECT MAX(" + changeColumn + ") FROM Gym");
+         final ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next()
+          ? resultSet.getString(1)
+          : null;
+    }
+  }
+
+  // where to read changes over the same area from: the watermark of the run before the last one that found changes,
+  // or with none yet, that of the last run; each area scraped keeps its own
+  private String loadWatermark(final CoordinateRange coordinateRange) throws IOException {
+    final Properties properties = loadWatermarks();
+
+    final String previousWatermark = properties.getProperty(WATERMARK + "." + coordinateRange + PREVIOUS);
+    if (previousWatermark != null) {
+      return previousWatermark;
+    }
+
+    final String watermark = properties.getProperty(WATERMARK + "." + coordinateRange);
+    if (watermark != null) {
+      return watermark;
+    }
+
+    // files written before watermarks were kept per area
+    return coordinateRange.toString().equals(properties.getProperty(WATERMARK_AREA))
+        ? properties.getProperty(WATERMARK)
+        : null;
+  }
+
+  private synchronized void saveWatermark(final CoordinateRange coordinateRange, final String watermark)
+      throws IOException {
+    final Properties properties = loadWatermarks();
+    final String key = WATERMARK + "." + coordinateRange;
+
+    // the last watermark stays the start of the overlap until one past it is saved
+    final String lastWatermark = properties.containsKey(key)
+        ? properties.getProperty(key)
+        : coordinateRange.toString().equals(properties.getProperty(WATERMARK_AREA))
+        ? properties.getProperty(WATERMARK)
+        : null;
+    if (lastWatermark != null && !lastWatermark.equals(watermark)) {
+      properties.setProperty(key + PREVIOUS, lastWatermark);
+    }
+
+    properties.remove(WATERMARK_AREA);
+    properties.remove(WATERMARK);
+    properties.setProperty(key, watermark);
+
+    try (final Writer writer = Files.newBufferedWriter(Paths.get(watermarkFile))) {
+      properties.store(writer, "Pine database change watermarks");
+    }
+
+    logger.info("Saved " + changeColumn + " watermark " + watermark + " for " + coordinateRange + ".");
+  }
+
+  private Properties loadWatermarks() throws IOException {
+    final Path path = Paths.get(watermarkFile);
+    final Properties properties = new Properties();
+
+    if (Files.exists(path)) {
+      try (final Reader reader = Files.newBufferedReader(path)) {
+        properties.load(reader);
+      }
+    }
+
+    return properties;
+  }
+
+  private static void close(final Connection connection) {
+    if (connection == null) {
+      return;
+    }
+
+    try {
+      connection.close();
+    } catch (final SQLException e) {
+      logger.debug("Exception caught closing connection", e);
+    }
+  }
 }
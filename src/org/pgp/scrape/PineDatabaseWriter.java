@@ -0,0 +1,333 @@
+package org.pgp.scrape;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.metrics.Metrics;
+import org.pgp.object.Geocode;
+import org.pgp.object.Gym;
+import org.pgp.object.GymInfo;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+// Writes gyms back to the Pine database's Gym table in batches, each batch in a transaction of its own: the batch's
+// rows are read first, and only gyms missing from the table or differing from their row are inserted or updated,
+// with JDBC batch statements. Geocode information is written as json to the address and places columns if given.
+// Updates leave the change column as it was, so the next incremental read doesn't take them for changes made in the
+// database; that keeps MySQL from applying ON UPDATE to it, but not triggers.
+public class PineDatabaseWriter {
+  private static final Logger logger = LogManager.getLogger(PineDatabaseWriter.class);
+
+  private static final String COLUMNS = "gymId, name, description, latitude, longitude, nearestGym";
+  // column names are written into the statements as they are, so are limited to plain identifiers
+  private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  private static final Type GEOCODES_TYPE = new TypeToken<Collection<Geocode>>() {
+  }.getType();
+  private static final Type PLACES_TYPE = new TypeToken<Collection<String>>() {
+  }.getType();
+
+  private final DataSource dataSource;
+  private final int batchSize;
+
+  // columns for the gym's geocodes and places as json, null if not written
+  private final String addressColumn;
+  private final String placesColumn;
+  // PineDatabaseScraper's, null if changes aren't tracked
+  private final String changeColumn;
+
+  private final Gson gson = new Gson();
+
+  public PineDatabaseWriter(final DataSource dataSource, final int batchSize) {
+    this(dataSource, batchSize, null, null);
+  }
+
+  public PineDatabaseWriter(final DataSource dataSource, final int batchSize, final String addressColumn,
+                            final String placesColumn) {
+    this(dataSource, batchSize, addressColumn, placesColumn, null);
+  }
+
+  public PineDatabaseWriter(final DataSource dataSource, final int batchSize, final String addressColumn,
+                            final String placesColumn, final String changeColumn) {
+    this.dataSource = dataSource;
+    this.batchSize = Math.max(1, batchSize);
+    this.addressColumn = checkColumnName(addressColumn);
+    this.placesColumn = checkColumnName(placesColumn);
+    this.changeColumn = checkColumnName(changeColumn);
+  }
+
+  public static boolean isColumnName(final String name) {
+    return name == null || COLUMN_NAME.matcher(name).matches();
+  }
+
+  private static String checkColumnName(final String name) {
+    if (!isColumnName(name)) {
+      throw new IllegalArgumentException("Column '" + name + "' is not a plain column name.");
+    }
+
+    return name;
+  }
+
+  // A gym's values as held in its row.
+  private static final class Row {
+    private final String name;
+    private final String description;
+    private final BigDecimal latitude;
+    private final BigDecimal longitude;
+    private final String nearestGym;
+    private final String address;
+    private final String places;
+
+    private Row(final String name, final String description, final BigDecimal latitude, final BigDecimal longitude,
+                final String nearestGym, final String address, final String places) {
+      this.name = name;
+      this.description = description;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.nearestGym = nearestGym;
+      this.address = address;
+      this.places = places;
+    }
+
+    // coordinates compare by value, as the columns' scale needn't be the gym's
+    private boolean isSame(final Row other) {
+      return Objects.equals(name, other.name) &&
+          Objects.equals(description, other.description) &&
+          isSame(latitude, other.latitude) &&
+          isSame(longitude, other.longitude) &&
+          Objects.equals(nearestGym, other.nearestGym) &&
+          Objects.equals(address, other.address) &&
+          Objects.equals(places, other.places);
+    }
+
+    private static boolean isSame(final BigDecimal value, final BigDecimal other) {
+      return value == null || other == null
+          ? value == other
+          : value.compareTo(other) == 0;
+    }
+  }
+
+  // Returns the number of rows inserted or updated.
+  public int write(final Collection<Gym> gyms) throws SQLException {
+    int inserted = 0;
+    int updated = 0;
+    int unchanged = 0;
+
+    try (final Connection connection = dataSource.getConnection()) {
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+
+      try {
+        final List<Gym> batch = new ArrayList<>(Math.min(batchSize, gyms.size()));
+        for (final Gym gym : gyms) {
+          if (gym.getGymId() == null) {
+            continue;
+          }
+
+          batch.add(gym);
+          if (batch.size() == batchSize) {
+            final int[] counts = writeBatch(connection, batch);
+            inserted += counts[0];
+            updated += counts[1];
+            unchanged += counts[2];
+            batch.clear();
+          }
+        }
+
+        if (!batch.isEmpty()) {
+          final int[] counts = writeBatch(connection, batch);
+          inserted += counts[0];
+          updated += counts[1];
+          unchanged += counts[2];
+        }
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+
+    logger.info("Wrote gyms back to the database: " + inserted + " inserted, " + updated + " updated, " +
+        unchanged + " unchanged.");
+
+    return inserted + updated;
+  }
+
+  // Returns the numbers of gyms inserted, updated and left unchanged.
+  private int[] writeBatch(final Connection connection, final List<Gym> batch) throws SQLException {
+    final long start = System.nanoTime();
+
+    try {
+      final Map<String, Row> rows = readRows(connection, batch);
+
+      final List<Gym> inserts = new ArrayList<>();
+      final List<Gym> updates = new ArrayList<>();
+      final Map<String, Row> values = new HashMap<>();
+
+      for (final Gym gym : batch) {
+        final Row value = toRow(gym);
+        final Row row = rows.get(gym.getGymId());
+
+        if (row == null) {
+          inserts.add(gym);
+        } else if (!row.isSame(value)) {
+          updates.add(gym);
+        } else {
+          continue;
+        }
+        values.put(gym.getGymId(), value);
+      }
+
+      if (!inserts.isEmpty()) {
+        try (final PreparedStatement statement = connection.prepareStatement("INSERT INTO Gym (" + columns() +
+            ") VALUES (" + String.join(", ", Collections.nCopies(columnCount(), "?")) + ")")) {
+          for (final Gym gym : inserts) {
+            statement.setString(1, gym.getGymId());
+            setValues(statement, 2, values.get(gym.getGymId()));
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+
+      if (!updates.isEmpty()) {
+        try (final PreparedStatement statement = connection.prepareStatement("UPDATE Gym SET name = ?, " +
+            "description = ?, latitude = ?, longitude = ?, nearestGym = ?" + (addressColumn != null
+            ? ", " + addressColumn + " = ?"
+            : "") + (placesColumn != null
+            ? ", " + placesColumn + " = ?"
+            : "") + (changeColumn != null
+            ? ", " + changeColumn + " = " + changeColumn
+            : "") + " WHERE gymId = ?")) {
+          for (final Gym gym : updates) {
+            final int parameter = setValues(statement, 1, values.get(gym.getGymId()));
+            statement.setString(parameter, gym.getGymId());
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+
+      connection.commit();
+
+      Metrics.timer("pine.write-batch").recordSince(start);
+      Metrics.counter("pine.rows-inserted").add(inserts.size());
+      Metrics.counter("pine.rows-updated").add(updates.size());
+      Metrics.counter("pine.rows-unchanged").add(batch.size() - values.size());
+
+      return new int[]{inserts.size(), updates.size(), batch.size() - values.size()};
+    } catch (final SQLException | RuntimeException e) {
+      try {
+        connection.rollback();
+      } catch (final SQLException rollbackException) {
+        e.addSuppressed(rollbackException);
+      }
+      throw e;
+    }
+  }
+
+  private Map<String, Row> readRows(final Connection connection, final List<Gym> batch) throws SQLException {
+    final Map<String, Row> rows = new HashMap<>();
+
+    try (final PreparedStatement statement = connection.prepareStatement("SELECT " + columns() +
+        " FROM Gym WHERE gymId IN (" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")")) {
+      int parameter = 1;
+      for (final Gym gym : batch) {
+        statement.setString(parameter++, gym.getGymId());
+      }
+
+      try (final ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          rows.put(resultSet.getString("gymId"), new Row(
+              resultSet.getString("name"),
+              resultSet.getString("description"),
+              resultSet.getBigDecimal("latitude"),
+              resultSet.getBigDecimal("longitude"),
+              resultSet.getString("nearestGym"),
+              addressColumn != null
+                  ? resultSet.getString(addressColumn)
+                  : null,
+              placesColumn != null
+                  ? resultSet.getString(placesColumn)
+                  : null));
+        }
+      }
+    }
+
+    return rows;
+  }
+
+  private Row toRow(final Gym gym) {
+    final GymInfo gymInfo = gym.getGymInfo();
+
+    if (gymInfo == null) {
+      return new Row(gym.getGymName(), null, null, null, null, null, null);
+    }
+
+    return new Row(gym.getGymName(), gymInfo.getGymDescription(), gymInfo.getLatitude(), gymInfo.getLongitude(),
+        gymInfo.getNearestGym(),
+        addressColumn != null && gymInfo.getAddressComponents() != null
+            ? gson.toJson(gymInfo.getAddressComponents(), GEOCODES_TYPE)
+            : null,
+        placesColumn != null && gymInfo.getPlaces() != null
+            ? gson.toJson(gymInfo.getPlaces(), PLACES_TYPE)
+            : null);
+  }
+
+  // Sets the row's values from the given parameter on, returning the parameter after them.
+  private int setValues(final PreparedStatement statement, int parameter, final Row row) throws SQLException {
+    statement.setString(parameter++, row.name);
+    statement.setString(parameter++, row.description);
+    statement.setBigDecimal(parameter++, row.latitude);
+    statement.setBigDecimal(parameter++, row.longitude);
+    statement.setString(parameter++, row.nearestGym);
+
+    if (addressColumn != null) {
+      setString(statement, parameter++, row.address);
+    }
+    if (placesColumn != null) {
+      setString(statement, parameter++, row.places);
+    }
+
+    return parameter;
+  }
+
+  private static void setString(final PreparedStatement statement, final int parameter, final String value)
+      throws SQLException {
+    if (value != null) {
+      statement.setString(parameter, value);
+    } else {
+      statement.setNull(parameter, Types.VARCHAR);
+    }
+  }
+
+  private String columns() {
+    return COLUMNS + (addressColumn != null
+        ? ", " + addressColumn
+        : "") + (placesColumn != null
+        ? ", " + placesColumn
+        : "");
+  }
+
+  private int columnCount() {
+    return 6 + (addressColumn != null
+        ? 1
+        : 0) + (placesColumn != null
+        ? 1
+        : 0);
+  }
+}
@@ -3,19 +3,30 @@ package org.pgp.scrape;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pgp.CoordinateRange;
+import org.pgp.http.AdaptiveThrottle;
+import org.pgp.http.HttpTransport;
+import org.pgp.http.JdkHttpTransport;
+import org.pgp.io.GymJsonReader;
+import org.pgp.metrics.ApiRequest;
+import org.pgp.metrics.Metrics;
+import org.pgp.metrics.Stage;
 import org.pgp.object.Gym;
 import org.pgp.object.GymInfo;
 
 import java.beans.ConstructorProperties;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 
 public class PokemonGoMapInfoScraper implements AreaScraper {
@@ -29,82 +40,227 @@ public class PokemonGoMapInfoScraper implements AreaScraper {
           "mapfilters=0[##split##]1[##split##]1[##split##]0[##split##]0[##split##]0[##split##]0[##split##]0[##split##]1[##split##]1[##split##]1[##split##]0;" +
           "latlngzoom=15[##split##]{curLatCenter}[##split##]{curLongCenter}";
 
-  private final static String GYMS_TEMPLATE = "curl " +
-      "\"https://www.pokemongomap.info/includes/it55nmsq9.php\" " +
-      "-k " +
-      "-H \"Cookie: {cookie}\" " +
-      "-H \"dnt: 1\" " +
-      "-H \"x-requested-with: XMLHttpRequest\" " +
-      "-H \"accept-language: en-US,en;q=0.8\" " +
-      "-H \"user-agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/61.0.3163.100 Safari/537.36\" " +
-      "-H \"content-type: application/x-www-form-urlencoded; charset=UTF-8\" " +
-      "-H \"accept: */*\" " +
-      "-H \"referer: https://www.pokemongomap.info/\" " +
-      "-H \"authority: www.pokemongomap.info\" " +
-      "--data \"fromlat={minLat}&tolat={maxLat}&fromlng={minLong}&tolng={maxLong}&fpoke=0&fgym=1&farm=0&nests=0&raids=0&sponsor=0\"";
-
-  private final static String GYM_TEMPLATE = "curl " +
-      "\"https://www.pokemongomap.info/includes/locdata.php\" " +
-      "-k " +
-      "-H \"Cookie: {cookie}\" " +
-      "-H \"Accept-Language: en-US,en;q=0.8\" " +
-      "-H \"User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/59.0.3071.115 Safari/537.36\" " +
-      "-H \"Content-Type: application/x-www-form-urlencoded; charset=UTF-8\" " +
-      "-H \"Accept: application/json, text/javascript, */*; q=0.01\" " +
-      "-H \"Referer: https://www.pokemongomap.info/\" " +
-      "-H \"X-Requested-With: XMLHttpRequest\" " +
-      "-H \"DNT: 1\" " +
-      "--data \"mid={gymId}\"";
+  private final static String DEFAULT_BASE_URL = "https://www.pokemongomap.info";
+
+  private final static String GYMS_PATH = "/includes/it55nmsq9.php";
+  private final static String GYMS_TEMPLATE =
+      "fromlat={minLat}&tolat={maxLat}&fromlng={minLong}&tolng={maxLong}&fpoke=0&fgym=1&farm=0&nests=0&raids=0&sponsor=0";
+
+  private final static String GYM_PATH = "/includes/locdata.php";
+  private final static String GYM_TEMPLATE = "mid={gymId}";
+
+  private final static Map<String, String> GYMS_HEADERS = new LinkedHashMap<>();
+  private final static Map<String, String> GYM_HEADERS = new LinkedHashMap<>();
+
+  static {
+    GYMS_HEADERS.put("dnt", "1");
+    GYMS_HEADERS.put("x-requested-with", "XMLHttpRequest");
+    GYMS_HEADERS.put("accept-language", "en-US,en;q=0.8");
+    GYMS_HEADERS.put("user-agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/61.0.3163.100 Safari/537.36");
+    GYMS_HEADERS.put("content-type", "application/x-www-form-urlencoded; charset=UTF-8");
+    GYMS_HEADERS.put("accept", "*/*");
+    GYMS_HEADERS.put("referer", "https://www.pokemongomap.info/");
+    GYMS_HEADERS.put("authority", "www.pokemongomap.info");
+
+    GYM_HEADERS.put("Accept-Language", "en-US,en;q=0.8");
+    GYM_HEADERS.put("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/59.0.3071.115 Safari/537.36");
+    GYM_HEADERS.put("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+    GYM_HEADERS.put("Accept", "application/json, text/javascript, */*; q=0.01");
+    GYM_HEADERS.put("Referer", "https://www.pokemongomap.info/");
+    GYM_HEADERS.put("X-Requested-With", "XMLHttpRequest");
+    GYM_HEADERS.put("DNT", "1");
+  }
 
   private final static BigDecimal COORDINATE_SCALE = new BigDecimal(1_852_000);
 
   private final int divideThreshold;
   private final String userId;
   private final String sessionId;
+  private final String baseUrl;
+  private final HttpTransport transport;
+  private final AdaptiveThrottle regionThrottle;
+  private final AdaptiveThrottle detailThrottle;
+  private final Path journalFile;
+  private final Path densityGymsFile;
+  private final double sitesPerGym;
 
   private final JsonParser parser = new JsonParser();
 
-  private String generateCommand(final CoordinateRange coordinateRange) {
+  private String generateQuery(final CoordinateRange coordinateRange) {
     return GYMS_TEMPLATE
         .replace("{minLat}", CoordinateRange.formatter.format(coordinateRange.getMinLat()))
         .replace("{maxLat}", CoordinateRange.formatter.format(coordinateRange.getMaxLat()))
         .replace("{minLong}", CoordinateRange.formatter.format(coordinateRange.getMinLong()))
-        .replace("{maxLong}", CoordinateRange.formatter.format(coordinateRange.getMaxLong()))
-        .replace("{cookie}", COOKIE)
+        .replace("{maxLong}", CoordinateRange.formatter.format(coordinateRange.getMaxLong()));
+  }
+
+  private Map<String, String> generateHeaders(final CoordinateRange coordinateRange) {
+    final Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("Cookie", COOKIE
         .replace("{user_id}", userId)
         .replace("{session_id}", sessionId)
         .replace("{curLatCenter}", CoordinateRange.formatter.format(coordinateRange.getMidLat()))
-        .replace("{curLongCenter}", CoordinateRange.formatter.format(coordinateRange.getMidLong()));
+        .replace("{curLongCenter}", CoordinateRange.formatter.format(coordinateRange.getMidLong())));
+    headers.putAll(GYMS_HEADERS);
+
+    return headers;
   }
 
-  private String generateDetailCommand(final Gym gym) {
+  private String generateDetailQuery(final Gym gym) {
     return GYM_TEMPLATE
-        .replace("{gymId}", String.valueOf(gym.getGymId()))
-        .replace("{cookie}", COOKIE)
+        .replace("{gymId}", String.valueOf(gym.getGymId()));
+  }
+
+  private Map<String, String> generateDetailHeaders() {
+    final Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("Cookie", COOKIE
         .replace("{user_id}", userId)
-        .replace("{session_id}", sessionId);
+        .replace("{session_id}", sessionId));
+    headers.putAll(GYM_HEADERS);
+
+    return headers;
+  }
+
+  private String post(final String endpoint, final AdaptiveThrottle throttle, final String path,
+                      final Map<String, String> headers, final String query) throws IOException, InterruptedException {
+    throttle.acquire();
+
+    final ApiRequest request = Metrics.apiRequest(endpoint);
+    try {
+      final String result = transport.post(baseUrl + path, headers, query).get();
+      request.succeeded();
+
+      return result;
+    } catch (final ExecutionException e) {
+      request.failed();
+
+      final Throwable cause = e.getCause() instanceof UncheckedIOException
+          ? e.getCause().getCause()
+          : e.getCause();
+      throw cause instanceof IOException
+          ? (IOException) cause
+          : new IOException(cause);
+    }
   }
 
   @ConstructorProperties({"divideThreshold", "userId", "sessionId"})
   public PokemonGoMapInfoScraper(final int divideThreshold, final String userId, final String sessionId) {
+    this(divideThreshold, userId, sessionId, DEFAULT_BASE_URL, new JdkHttpTransport());
+  }
+
+  @ConstructorProperties({"divideThreshold", "userId", "sessionId", "baseUrl", "transport"})
+  public PokemonGoMapInfoScraper(final int divideThreshold, final String userId, final String sessionId,
+                                 final String baseUrl, final HttpTransport transport) {
+    this(divideThreshold, userId, sessionId, baseUrl, transport, null, null);
+  }
+
+  @ConstructorProperties({"divideThreshold", "userId", "sessionId", "baseUrl", "transport", "regionThrottle",
+      "detailThrottle"})
+  public PokemonGoMapInfoScraper(final int divideThreshold, final String userId, final String sessionId,
+                                 final String baseUrl, final HttpTransport transport,
+                                 final AdaptiveThrottle regionThrottle, final AdaptiveThrottle detailThrottle) {
+    this(divideThreshold, userId, sessionId, baseUrl, transport, regionThrottle, detailThrottle, null);
+  }
+
+  @ConstructorProperties({"divideThreshold", "userId", "sessionId", "baseUrl", "transport", "regionThrottle",
+      "detailThrottle", "journalFile"})
+  public PokemonGoMapInfoScraper(final int divideThreshold, final String userId, final String sessionId,
+                                 final String baseUrl, final HttpTransport transport,
+                                 final AdaptiveThrottle regionThrottle, final AdaptiveThrottle detailThrottle,
+                                 final String journalFile) {
+    this(divideThreshold, userId, sessionId, baseUrl, transport, regionThrottle, detailThrottle, journalFile, null,
+        1d);
+  }
+
+  @ConstructorProperties({"divideThreshold", "userId", "sessionId", "baseUrl", "transport", "regionThrottle",
+      "detailThrottle", "journalFile", "densityGymsFile", "sitesPerGym"})
+  public PokemonGoMapInfoScraper(final int divideThreshold, final String userId, final String sessionId,
+                                 final String baseUrl, final HttpTransport transport,
+                                 final AdaptiveThrottle regionThrottle, final AdaptiveThrottle detailThrottle,
+                                 final String journalFile, final String densityGymsFile, final double sitesPerGym) {
     this.divideThreshold = divideThreshold;
     this.userId = userId;
     this.sessionId = sessionId;
+    this.baseUrl = baseUrl != null
+        ? baseUrl
+        : DEFAULT_BASE_URL;
+    this.transport = transport != null
+        ? transport
+        : new JdkHttpTransport();
+    // starts at the old fixed pace of one region every 10 seconds and one gym every second
+    this.regionThrottle = regionThrottle != null
+        ? regionThrottle
+        : new AdaptiveThrottle("Regions", 0.1d, 1d / 300d, 1d, 0.01d, 0.5d, 1d, 30_000L, 300_000L);
+    this.detailThrottle = detailThrottle != null
+        ? detailThrottle
+        : new AdaptiveThrottle("Gym details", 1d, 1d / 60d, 5d, 0.05d, 0.5d, 1d, 10_000L, 300_000L);
+    this.journalFile = journalFile != null
+        ? Paths.get(journalFile)
+        : null;
+    this.densityGymsFile = densityGymsFile != null
+        ? Paths.get(densityGymsFile)
+        : null;
+    this.sitesPerGym = sitesPerGym;
+  }
+
+  // gyms from a previous run, to plan subdivision without probing
+  private GymDensity loadDensity(final CoordinateRange fullArea) throws IOException {
+    if (densityGymsFile == null) {
+      return null;
+    }
+
+    if (!Files.exists(densityGymsFile)) {
+      logger.warn("Density gyms file '" + densityGymsFile + "' does not exist, subdividing by probing only.");
+      return null;
+    }
+
+    final GymDensity density = new GymDensity(GymJsonReader.read(densityGymsFile.toFile(), new ArrayList<>()));
+    logger.info("Planning subdivision from " + density.count(fullArea) + " previously known gyms in the area.");
+
+    return density;
   }
 
+  // Gyms come back even when the scrape is interrupted, as far as it got; the journal picks up from there.
   @Override
   public Set<Gym> scrapeArea(final CoordinateRange fullArea) {
+    final Set<Gym> gyms = new TreeSet<>();
+    scrapeArea(fullArea, gyms::add);
+
+    return gyms;
+  }
+
+  // Each gym is passed on as soon as its details are in, on the calling thread.
+  @Override
+  public boolean scrapeArea(final CoordinateRange fullArea, final Consumer<Gym> sink) {
     final Stack<CoordinateRange> coordinateRanges = new Stack<>();
 
     coordinateRanges.push(fullArea);
 
-    final Set<Gym> gyms = new TreeSet<>();
+    int detailedGyms = 0;
+
+    ScrapeJournal journal = null;
+    boolean completed = false;
 
     try {
-      // maps from actual gym object to command to get detailed gym info
-      final Stack<Map.Entry<Gym, String>> gymCommands = new Stack<>();
+      journal = ScrapeJournal.open(journalFile, fullArea);
+      final GymDensity density = loadDensity(fullArea);
+
+      // maps from actual gym object to query to get detailed gym info
+      final Stack<Map.Entry<Gym, String>> gymQueries = new Stack<>();
+
+      // picking up an interrupted run; tiles already queried are skipped below
+      for (final Gym gym : journal.getDetailedGyms()) {
+        sink.accept(gym);
+        detailedGyms++;
+      }
+      journal.getPendingGyms()
+          .forEach(gym -> gymQueries.push(new AbstractMap.SimpleImmutableEntry<>(gym, generateDetailQuery(gym))));
 
-      try {
+      int plannedSplits = 0;
+      int probedSplits = 0;
+
+      boolean interrupted = false;
+      try (final Stage stage = Metrics.stage("scrape.pgmi.regions")) {
         while (!coordinateRanges.isEmpty()) {
           final CoordinateRange coordinateRange = coordinateRanges.pop();
 
@@ -115,142 +271,199 @@ public class PokemonGoMapInfoScraper implements AreaScraper {
             continue;
           }
 
-          final String command = generateCommand(coordinateRange);
+          if (journal.isTileSplit(coordinateRange)) {
+            coordinateRange.subDivide()
+                .forEach(coordinateRanges::push);
+            continue;
+          }
+
+          if (journal.isTileDone(coordinateRange)) {
+            continue;
+          }
 
-          logger.debug("Command is: '" + command + "'.");
+          // known gyms alone put this tile over the threshold, so the query would only be thrown away
+          if (density != null && density.count(coordinateRange) * sitesPerGym > divideThreshold) {
+            plannedSplits++;
+            journal.tileSplit(coordinateRange);
+            coordinateRange.subDivide()
+                .forEach(coordinateRanges::push);
+            continue;
+          }
+
+          final String query = generateQuery(coordinateRange);
+
+          logger.debug("Query is: '" + query + "'.");
           logger.info("Processing region " + coordinateRange + ":");
 
-          final Process process = Runtime.getRuntime().exec(command);
-          try {
-            try (final BufferedReader input = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-              final String result = IOUtils.toString(input);
-              final JsonElement element = parser.parse(result);
-              if (element.isJsonObject()) {
-                // we got a non-empty response of some sort, so either a spam message or an actual gym list
-                final JsonObject object = element.getAsJsonObject();
-
-                if (object.get("spam") != null) {
-                  // pokemongomapinfo is telling us to cool it, so wait and try again...
-                  logger.warn("Spam warning detected - sleeping 5 minutes...");
-                  coordinateRanges.push(coordinateRange);
-                  Thread.sleep(300_000L);
-                } else {
-                  final int siteCount = object.keySet().size();
-
-                  if (siteCount > divideThreshold) {
-                    logger.info("  " + siteCount + " sites found - subdividing...");
-                    coordinateRange.subDivide()
-                        .forEach(coordinateRanges::push);
-                  } else {
-                    // site id's are the keys in the result set
-                    final Set<Map.Entry<String, JsonElement>> entries = object.entrySet();
-
-                    logger.info("  " + entries.size() + " site(s) found...");
-
-                    entries.stream()
-                        .map(entry -> {
-                          final String siteId = entry.getKey();
-                          final JsonElement site = entry.getValue();
-
-                          if (site.isJsonObject()) {
-                            final JsonObject siteObject = site.getAsJsonObject();
-                            final String siteName = siteObject.get("rfs21d").getAsString();
-
-                            final int siteType = Integer.parseInt(
-                                new String(Base64.getDecoder().decode(siteObject.get("xgxg35").getAsString())));
-                            if (siteType > 1) {
-                              logger.info("    Found gym '" + siteName + "'.");
-                              final Gym gym = new Gym(siteId, siteName);
-                              final String latitude = new String(Base64.getDecoder().decode(siteObject.get("z3iafj").getAsString()));
-                              final String longitude = new String(Base64.getDecoder().decode(siteObject.get("f24sfvs").getAsString()));
-
-                              final GymInfo gymInfo = new GymInfo();
-                              gymInfo.setLatitude(new BigDecimal(latitude).divide(COORDINATE_SCALE));
-                              gymInfo.setLongitude(new BigDecimal(longitude).divide(COORDINATE_SCALE));
-
-                              gym.setGymInfo(gymInfo);
-
-                              return gym;
-                            } else {
-                              logger.debug("    Skipping site '" + siteName + "'.");
-                            }
-                          } else {
-                            logger.warn("Returned result is not a valid json object!");
-                            logger.debug("Result is '" + site.getAsString() + "'.");
-                          }
-                          return null;
-                        })
-                        .filter(Objects::nonNull)
-                        .forEach(gym -> gymCommands.push(new AbstractMap.SimpleImmutableEntry<>(gym, generateDetailCommand(gym))));
+          final String result = post("pgmi-regions", regionThrottle, GYMS_PATH, generateHeaders(coordinateRange), query);
+          final JsonElement element = parser.parse(result);
+          if (element.isJsonObject()) {
+            // we got a non-empty response of some sort, so either a spam message or an actual gym list
+            final JsonObject object = element.getAsJsonObject();
+
+            if (object.get("spam") != null) {
+              // pokemongomapinfo is telling us to cool it, so back off and try again...
+              logger.warn("Spam warning detected - backing off...");
+              Metrics.counter("pgmi.spam").increment();
+              regionThrottle.onThrottled();
+              coordinateRanges.push(coordinateRange);
+            } else {
+              regionThrottle.onSuccess();
+
+              final int siteCount = object.keySet().size();
+
+              if (siteCount > divideThreshold) {
+                logger.info("  " + siteCount + " sites found - subdividing...");
+                probedSplits++;
+                journal.tileSplit(coordinateRange);
+                coordinateRange.subDivide()
+                    .forEach(coordinateRanges::push);
+              } else {
+                // site id's are the keys in the result set
+                final Set<Map.Entry<String, JsonElement>> entries = object.entrySet();
+
+                logger.info("  " + entries.size() + " site(s) found...");
+
+                final List<Gym> foundGyms = entries.stream()
+                    .map(entry -> {
+                      final String siteId = entry.getKey();
+                      final JsonElement site = entry.getValue();
+
+                      if (site.isJsonObject()) {
+                        final JsonObject siteObject = site.getAsJsonObject();
+                        final String siteName = siteObject.get("rfs21d").getAsString();
+
+                        final int siteType = Integer.parseInt(
+                            new String(Base64.getDecoder().decode(siteObject.get("xgxg35").getAsString())));
+                        if (siteType > 1) {
+                          logger.info("    Found gym '" + siteName + "'.");
+                          final Gym gym = new Gym(siteId, siteName);
+                          final String latitude = new String(Base64.getDecoder().decode(siteObject.get("z3iafj").getAsString()));
+                          final String longitude = new String(Base64.getDecoder().decode(siteObject.get("f24sfvs").getAsString()));
+
+                          final GymInfo gymInfo = new GymInfo();
+                          gymInfo.setLatitude(new BigDecimal(latitude).divide(COORDINATE_SCALE));
+                          gymInfo.setLongitude(new BigDecimal(longitude).divide(COORDINATE_SCALE));
+
+                          gym.setGymInfo(gymInfo);
+
+                          return gym;
+                        } else {
+                          logger.debug("    Skipping site '" + siteName + "'.");
+                        }
+                      } else {
+                        logger.warn("Returned result is not a valid json object!");
+                        logger.debug("Result is '" + site.getAsString() + "'.");
+                      }
+                      return null;
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+                for (final Gym gym : foundGyms) {
+                  if (journal.gymFound(gym)) {
+                    gymQueries.push(new AbstractMap.SimpleImmutableEntry<>(gym, generateDetailQuery(gym)));
                   }
                 }
-              } else if (!element.isJsonNull()) {
-                // empty result set, nothing in this region
-                logger.info("  0 sites found...");
-              } else {
-                logger.warn("  Null / completely empty result...");
-                coordinateRanges.push(coordinateRange);
+                journal.tileDone(coordinateRange);
               }
             }
-          } finally {
-            process.destroy();
+          } else if (!element.isJsonNull()) {
+            // empty result set, nothing in this region
+            logger.info("  0 sites found...");
+            regionThrottle.onSuccess();
+            journal.tileDone(coordinateRange);
+          } else {
+            logger.warn("  Null / completely empty result...");
+            Metrics.counter("pgmi.empty-responses").increment();
+            regionThrottle.onThrottled();
+            coordinateRanges.push(coordinateRange);
           }
-
-          Thread.sleep(10_000L);
         }
+        stage.setItems(gymQueries.size());
       } catch (final InterruptedException e) {
         logger.error("InterruptedException caught", e);
+        interrupted = true;
       }
 
-      logger.info(gymCommands.size() + " new gyms found.");
+      logger.info(regionThrottle.toString());
+      if (density != null) {
+        logger.info("Subdivision planned from known gyms saved " + plannedSplits + " region requests; " +
+            probedSplits + " tiles still had to be split after querying.");
+      }
+      logger.info(gymQueries.size() + " new gyms found.");
 
       // For each gym, now get its detailed information so we can get its location
       logger.info("Retrieving detailed gym information:");
-      while (!gymCommands.isEmpty()) {
-        final Map.Entry<Gym, String> entry = gymCommands.pop();
+      try (final Stage stage = Metrics.stage("scrape.pgmi.details")) {
+        while (!gymQueries.isEmpty()) {
+          final Map.Entry<Gym, String> entry = gymQueries.pop();
 
-        final Gym gym = entry.getKey();
-        final String command = entry.getValue();
+          final Gym gym = entry.getKey();
+          final String query = entry.getValue();
 
-        logger.debug("Command is: '" + command + "'.");
-        final Process process = Runtime.getRuntime().exec(command);
+          logger.debug("Query is: '" + query + "'.");
 
-        try (final BufferedReader input = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-          final String result = IOUtils.toString(input);
+          final String result = post("pgmi-details", detailThrottle, GYM_PATH, generateDetailHeaders(), query);
           final JsonElement element = parser.parse(result);
 
           if (element.isJsonObject()) {
             final JsonObject object = element.getAsJsonObject();
 
             if (object.get("spam") != null) {
-              logger.warn("Spam warning detected - sleeping 5 minutes...");
-              gymCommands.push(entry);
-              Thread.sleep(300_000L);
+              logger.warn("Spam warning detected - backing off...");
+              Metrics.counter("pgmi.spam").increment();
+              detailThrottle.onThrottled();
+              gymQueries.push(entry);
             } else {
+              detailThrottle.onSuccess();
               logger.info("  Filling in location information for gym '" + gym.getGymName() + "'.");
 
               final String description = object.get("description").getAsString();
 
               gym.getGymInfo().setGymDescription(description);
-              gyms.add(gym);
+              sink.accept(gym);
+              detailedGyms++;
+              journal.gymDetailed(gym);
             }
           } else if (!element.isJsonNull()) {
             // empty result set, nothing in this region
             logger.info("  Empty result in getting location information for gym...");
+            detailThrottle.onSuccess();
+            journal.gymEmpty(gym);
           } else {
             logger.warn("  Null / completely empty result...");
-            gymCommands.push(entry);
+            Metrics.counter("pgmi.empty-responses").increment();
+            detailThrottle.onThrottled();
+            gymQueries.push(entry);
           }
         }
-
-        Thread.sleep(1_000L);
+        stage.setItems(detailedGyms);
       }
 
+      logger.info(detailThrottle.toString());
+
+      completed = !interrupted;
     } catch (final IOException |
         InterruptedException e) {
       logger.error("Exception caught", e);
+    } finally {
+      if (journal != null) {
+        try {
+          if (completed) {
+            journal.delete();
+          } else {
+            journal.close();
+            if (journalFile != null) {
+              logger.info("Scrape incomplete, progress kept in journal '" + journalFile + "'.");
+            }
+          }
+        } catch (final IOException e) {
+          logger.error("Exception caught", e);
+        }
+      }
     }
 
-    return gyms;
+    return completed;
   }
 }
@@ -0,0 +1,258 @@
+package org.pgp.scrape;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.CoordinateRange;
+import org.pgp.object.Gym;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Append-only record of a region scrape's progress, one tab separated line per event, so a run over the same
+// area can pick up where an interrupted one stopped.  Lines are flushed in batches; a torn last line is dropped.
+// Without a file only the in-memory bookkeeping is done.
+public class ScrapeJournal implements Closeable {
+  private static final Logger logger = LogManager.getLogger(ScrapeJournal.class);
+
+  private static final int FLUSH_INTERVAL = 32;
+
+  private static final String RANGE = "range";
+  private static final String TILE_DONE = "tile";
+  private static final String TILE_SPLIT = "split";
+  private static final String GYM_FOUND = "found";
+  private static final String GYM_DETAILED = "detailed";
+  private static final String GYM_EMPTY = "empty";
+
+  private final Path file;
+  private final Gson gson = new Gson();
+
+  private final Set<String> doneTiles = new HashSet<>();
+  private final Set<String> splitTiles = new HashSet<>();
+  private final Map<String, Gym> foundGyms = new LinkedHashMap<>();
+  private final Map<String, Gym> detailedGyms = new LinkedHashMap<>();
+  private final Set<String> emptyGyms = new HashSet<>();
+
+  private BufferedWriter writer;
+  private int unflushed;
+
+  private ScrapeJournal(final Path file) {
+    this.file = file;
+  }
+
+  public static ScrapeJournal open(final Path file, final CoordinateRange coordinateRange) throws IOException {
+    final ScrapeJournal journal = new ScrapeJournal(file);
+
+    if (file == null) {
+      return journal;
+    }
+
+    if (Files.exists(file) && journal.replay(coordinateRange.toString())) {
+      logger.info("Resuming from journal '" + file + "': " + journal.doneTiles.size() + " tiles done, " +
+          journal.foundGyms.size() + " gyms found, " + journal.detailedGyms.size() + " with details.");
+      journal.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    } else {
+      journal.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+      journal.append(RANGE, coordinateRange.toString());
+      journal.flush();
+    }
+
+    return journal;
+  }
+
+  // returns false if the journal was for another area. A torn last line, from a run interrupted mid write, is cut off
+  // so the entries appended after it start on a line of their own.
+  private boolean replay(final String coordinateRange) throws IOException {
+    long complete = 0L;
+
+    try (final InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      final ByteArrayOutputStream line = new ByteArrayOutputStream();
+      long offset = 0L;
+      boolean header = true;
+
+      int b;
+      while ((b = in.read()) >= 0) {
+        offset++;
+        if (b != '\n') {
+          line.write(b);
+          continue;
+        }
+
+        String entry = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        line.reset();
+        if (entry.endsWith("\r")) {
+          entry = entry.substring(0, entry.length() - 1);
+        }
+
+        if (header) {
+          if (!entry.equals(RANGE + '\t' + coordinateRange)) {
+            logger.info("Journal '" + file + "' is for a different area, starting over.");
+            return false;
+          }
+          header = false;
+        } else {
+          replayEntry(entry);
+        }
+        complete = offset;
+      }
+
+      if (header) {
+        logger.info("Journal '" + file + "' has no area, starting over.");
+        return false;
+      }
+    }
+
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      if (channel.size() > complete) {
+        logger.info("Dropping torn last entry of journal '" + file + "'.");
+        channel.truncate(complete);
+      }
+    }
+
+    return true;
+  }
+
+  // entries that can't be read, e.g. torn ones from journals written before torn lines were cut off, are skipped
+  private void replayEntry(final String line) {
+    final int tab = line.indexOf('\t');
+    if (tab < 0) {
+      logger.warn("Skipping malformed journal entry '" + line + "'.");
+      return;
+    }
+
+    final String value = line.substring(tab + 1);
+    try {
+      switch (line.substring(0, tab)) {
+        case TILE_DONE:
+          doneTiles.add(value);
+          break;
+        case TILE_SPLIT:
+          splitTiles.add(value);
+          break;
+        case GYM_FOUND: {
+          final Gym gym = gson.fromJson(value, Gym.class);
+          foundGyms.putIfAbsent(gym.getGymId(), gym);
+          break;
+        }
+        case GYM_DETAILED: {
+          final Gym gym = gson.fromJson(value, Gym.class);
+          detailedGyms.put(gym.getGymId(), gym);
+          break;
+        }
+        case GYM_EMPTY:
+          emptyGyms.add(value);
+          break;
+        default:
+          logger.warn("Ignoring unknown journal entry '" + line + "'.");
+      }
+    } catch (final JsonParseException e) {
+      logger.warn("Skipping malformed journal entry '" + line + "'.");
+    }
+  }
+
+  public boolean isTileDone(final CoordinateRange coordinateRange) {
+    return doneTiles.contains(coordinateRange.toString());
+  }
+
+  public boolean isTileSplit(final CoordinateRange coordinateRange) {
+    return splitTiles.contains(coordinateRange.toString());
+  }
+
+  public void tileDone(final CoordinateRange coordinateRange) throws IOException {
+    if (doneTiles.add(coordinateRange.toString())) {
+      append(TILE_DONE, coordinateRange.toString());
+    }
+  }
+
+  public void tileSplit(final CoordinateRange coordinateRange) throws IOException {
+    if (splitTiles.add(coordinateRange.toString())) {
+      append(TILE_SPLIT, coordinateRange.toString());
+    }
+  }
+
+  // returns false if the gym was already found, e.g. by a tile re-queried after a torn journal
+  public boolean gymFound(final Gym gym) throws IOException {
+    if (foundGyms.putIfAbsent(gym.getGymId(), gym) != null) {
+      return false;
+    }
+
+    append(GYM_FOUND, gson.toJson(gym));
+    return true;
+  }
+
+  public void gymDetailed(final Gym gym) throws IOException {
+    detailedGyms.put(gym.getGymId(), gym);
+    append(GYM_DETAILED, gson.toJson(gym));
+  }
+
+  public void gymEmpty(final Gym gym) throws IOException {
+    emptyGyms.add(gym.getGymId());
+    append(GYM_EMPTY, gym.getGymId());
+  }
+
+  // found gyms whose details are still to be fetched
+  public List<Gym> getPendingGyms() {
+    final List<Gym> pendingGyms = new ArrayList<>();
+    foundGyms.forEach((gymId, gym) -> {
+      if (!detailedGyms.containsKey(gymId) && !emptyGyms.contains(gymId)) {
+        pendingGyms.add(gym);
+      }
+    });
+
+    return pendingGyms;
+  }
+
+  public Collection<Gym> getDetailedGyms() {
+    return detailedGyms.values();
+  }
+
+  private void append(final String type, final String value) throws IOException {
+    if (writer == null) {
+      return;
+    }
+
+    writer.write(type);
+    writer.write('\t');
+    writer.write(value);
+    writer.newLine();
+
+    if (++unflushed >= FLUSH_INTERVAL) {
+      flush();
+    }
+  }
+
+  public void flush() throws IOException {
+    if (writer != null) {
+      writer.flush();
+      unflushed = 0;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  // the scrape finished, nothing left to resume
+  public void delete() throws IOException {
+    close();
+
+    if (file != null) {
+      Files.deleteIfExists(file);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.pgp.scrape;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pgp.CoordinateRange;
+import org.pgp.metrics.Metrics;
+import org.pgp.metrics.Stage;
+import org.pgp.object.Gym;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Wraps any scraper, splitting the area into quadrants scraped in parallel on a work-stealing pool.
+// Tiles larger than maxTileArea are split before being scraped, and a tile returning more than splitThreshold
+// gyms is split again (at most maxDepth times over), as a source may truncate large result sets.
+public class TilingAreaScraper implements AreaScraper {
+  private static final Logger logger = LogManager.getLogger(TilingAreaScraper.class);
+
+  private final AreaScraper scraper;
+  private final int parallelism;
+  private final double maxTileArea;
+  private final int splitThreshold;
+  private final int maxDepth;
+
+  @ConstructorProperties({"scraper", "parallelism", "maxTileArea", "splitThreshold", "maxDepth"})
+  public TilingAreaScraper(final AreaScraper scraper, final int parallelism, final double maxTileArea,
+                           final int splitThreshold, final int maxDepth) {
+    this.scraper = scraper;
+    this.parallelism = Math.max(1, parallelism);
+    this.maxTileArea = maxTileArea;
+    this.splitThreshold = splitThreshold;
+    this.maxDepth = maxDepth;
+  }
+
+  @Override
+  public Set<Gym> scrapeArea(final CoordinateRange coordinateRange) {
+    final Set<Gym> gyms = new ConcurrentSkipListSet<>();
+
+    return scrapeArea(coordinateRange, gyms::add)
+        ? new TreeSet<>(gyms)
+        : null;
+  }
+
+  // A tile's gyms are passed on as soon as it is scraped and known not to need splitting, from the pool's threads.
+  @Override
+  public boolean scrapeArea(final CoordinateRange coordinateRange, final Consumer<Gym> sink) {
+    // gyms compare by id, so one found by neighbouring tiles is only passed on once
+    final Set<Gym> gyms = new ConcurrentSkipListSet<>();
+    final AtomicInteger scrapedTiles = new AtomicInteger();
+    final AtomicInteger splitTiles = new AtomicInteger();
+    final AtomicBoolean failed = new AtomicBoolean();
+
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try (final Stage stage = Metrics.stage("scrape.tiling")) {
+      pool.invoke(new Tile(coordinateRange, 0, gyms, sink, scrapedTiles, splitTiles, failed));
+      stage.setItems(scrapedTiles.get());
+    } finally {
+      pool.shutdown();
+    }
+
+    logger.info("Scraped " + scrapedTiles.get() + " tiles (" + splitTiles.get() + " split after scraping), " +
+        gyms.size() + " gyms.");
+
+    return !failed.get();
+  }
+
+  private final class Tile extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final CoordinateRange coordinateRange;
+    private final int depth;
+    private final Set<Gym> gyms;
+    private final Consumer<Gym> sink;
+    private final AtomicInteger scrapedTiles;
+    private final AtomicInteger splitTiles;
+    private final AtomicBoolean failed;
+
+    private Tile(final CoordinateRange coordinateRange, final int depth, final Set<Gym> gyms,
+                 final Consumer<Gym> sink, final AtomicInteger scrapedTiles, final AtomicInteger splitTiles,
+                 final AtomicBoolean failed) {
+      this.coordinateRange = coordinateRange;
+      this.depth = depth;
+      this.gyms = gyms;
+      this.sink = sink;
+      this.scrapedTiles = scrapedTiles;
+      this.splitTiles = splitTiles;
+      this.failed = failed;
+    }
+
+    @Override
+    protected void compute() {
+      if (maxTileArea > 0d && coordinateRange.area() > maxTileArea) {
+        split(depth);
+        return;
+      }
+
+      // the whole tile is needed to tell whether it has to be split, so the wrapped scraper isn't streamed from
+      final Set<Gym> tileGyms = scraper.scrapeArea(coordinateRange);
+      scrapedTiles.incrementAndGet();
+
+      if (tileGyms == null) {
+        logger.warn("  Scraping " + coordinateRange + " failed.");
+        failed.set(true);
+        return;
+      }
+      Metrics.histogram("tiling.gyms-per-tile").record(tileGyms.size());
+
+      if (splitThreshold > 0 && tileGyms.size() > splitThreshold && depth < maxDepth) {
+        logger.info("  " + tileGyms.size() + " gyms in " + coordinateRange + " - subdividing...");
+        splitTiles.incrementAndGet();
+        split(depth + 1);
+        return;
+      }
+
+      for (final Gym gym : tileGyms) {
+        if (gyms.add(gym)) {
+          sink.accept(gym);
+        }
+      }
+    }
+
+    private void split(final int childDepth) {
+      final List<Tile> children = coordinateRange.subDivide().stream()
+          .map(child -> new Tile(child, childDepth, gyms, sink, scrapedTiles, splitTiles, failed))
+          .collect(Collectors.toList());
+
+      invokeAll(children);
+    }
+  }
+}